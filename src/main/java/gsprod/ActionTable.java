@@ -0,0 +1,104 @@
+package gsprod;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The net-wide symbol table of action labels. Every label is interned once and gets a small int id (ids are dense,
+ * starting from 0); the synchronizing ones are flagged by a bit indexed by the id.
+ * The table can be shared by the threads reducing the subtrees of a net: the lookups don't lock and new labels are
+ * added under a lock, to an array of names that doubles when it is full. The synchronizing labels must be registered
+ * before the reduction starts.
+ */
+public class ActionTable {
+
+    private volatile String[] names;
+    private volatile int size;
+    private ConcurrentHashMap<String, Integer> ids;
+    private BitSet syncFlags;
+    private LinkedHashSet<String> syncActions;
+
+    public ActionTable() {
+        this.names = new String[16];
+        this.ids = new ConcurrentHashMap<>();
+        this.syncFlags = new BitSet();
+        this.syncActions = new LinkedHashSet<>();
+    }
+
+    /**
+     * Returns the id of the label, registering the label as a local one if it is not known yet.
+     */
+    public int intern(String label) {
+        Integer id = this.ids.get(label);
+        if (id != null) return id;
+
+        synchronized (this) {
+            id = this.ids.get(label);
+            if (id == null) {
+                // the name is published before the id, so whoever sees the id can read the name
+                id = this.size;
+                if (id == this.names.length) this.names = Arrays.copyOf(this.names, 2 * id);
+                this.names[id] = label;
+                this.size = id + 1;
+                this.ids.put(label, id);
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Interns the label and flags it as synchronizing.
+     */
+    public synchronized int addSync(String label) {
+        int id = this.intern(label);
+        this.syncFlags.set(id);
+        this.syncActions.add(this.getName(id));
+
+        return id;
+    }
+
+    /**
+     * Returns the interned instance of the label, so that equal labels share one String.
+     */
+    public String canonical(String label) {
+        return this.getName(this.intern(label));
+    }
+
+    /**
+     * Returns the id of the label or -1 if the label is unknown.
+     */
+    public int getId(String label) {
+        Integer id = this.ids.get(label);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int id) {
+        return this.names[id];
+    }
+
+    public boolean isSync(int id) {
+        return this.syncFlags.get(id);
+    }
+
+    /**
+     * Returns the set of ids of the synchronizing labels. Don't modify it.
+     */
+    public BitSet getSyncFlags() {
+        return this.syncFlags;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the synchronizing labels in the order of registration. Use addSync to register new ones.
+     */
+    public LinkedHashSet<String> getSyncActions() {
+        return this.syncActions;
+    }
+
+}
@@ -0,0 +1,121 @@
+package gsprod;
+
+/**
+ * The single-threaded breadth-first exploration with an ApproximateStateSet, for the nets whose state spaces don't fit
+ * in memory even compressed: only the BFS frontier is stored, as a queue of encoded states. The states are numbered in
+ * the order of discovery, which is the order of expansion. A transition to a state that was visited before has target
+ * -1, since the set doesn't know its number; so only the sinks that ignore the targets, as ProductStatistics, get a
+ * meaningful product. The states taken for visited ones by mistake are omitted with their transitions, and so are the
+ * states reachable only through them; the estimate of the number of the former is reported to the sink at the end.
+ */
+public class ApproximateExplorer implements ProductExplorer {
+
+    private final ProductSettings settings;
+
+    public ApproximateExplorer(ProductSettings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        // state i of the queue is state i + 1 of the product; 0 is the dummy initial state
+        int width = level.getWidth();
+        ApproximateStateSet visited = this.settings.newApproximateStateSet(width);
+        StateQueue frontier = new StateQueue(width);
+        long[] curr = new long[width];
+        long[] succ = new long[width];
+
+        int[] next = { 1 };
+        for (int i = 0; i < level.getInitialCount(); ++i) {
+            level.encodeInitial(i, succ, 0);
+            product.addTransition(0, level.getEpsilon(), this.visit(visited, frontier, succ, 0, next));
+        }
+
+        for (int source = 1; !frontier.isEmpty(); ++source) {
+            frontier.poll(curr);
+            int currSource = source;
+            level.expand(curr, succ, (label, slots, base) -> product.addTransition(currSource, label, this.visit(visited, frontier, slots, base, next)));
+        }
+
+        product.addReport("visited set: " + visited);
+        product.setStateCount(next[0]);
+    }
+
+    /**
+     * Explores the states of the implicit automaton reachable from its initial state, which gets number 0.
+     */
+    public void explore(ImplicitAutomaton automaton, ProductSink product, boolean verbose) {
+        int width = automaton.getWidth();
+        ApproximateStateSet visited = this.settings.newApproximateStateSet(width);
+        StateQueue frontier = new StateQueue(width);
+        long[] curr = new long[width];
+        long[] succ = new long[width];
+
+        int[] next = { 0 };
+        automaton.encodeInitial(curr, 0);
+        this.visit(visited, frontier, curr, 0, next);
+        for (int source = 0; !frontier.isEmpty(); ++source) {
+            frontier.poll(curr);
+            int currSource = source;
+            automaton.successors(curr, 0, succ, (label, slots, base) -> product.addTransition(currSource, label, this.visit(visited, frontier, slots, base, next)));
+        }
+
+        product.addReport("visited set: " + visited);
+        product.setStateCount(next[0]);
+    }
+
+    /**
+     * Returns the number of the state if it is new, queueing it, and -1 if it was visited.
+     */
+    private int visit(ApproximateStateSet visited, StateQueue frontier, long[] slots, int base, int[] next) {
+        if (!visited.add(slots, base)) return -1;
+        if (next[0] == Integer.MAX_VALUE) throw new RuntimeException("Too many states for int ids.");
+        frontier.add(slots, base);
+        return next[0]++;
+    }
+
+    /**
+     * A FIFO queue of encoded states in a growable ring buffer.
+     */
+    private static class StateQueue {
+
+        private final int width;
+        private long[] slots;
+        private int head;
+        private int size;
+
+        StateQueue(int width) {
+            this.width = width;
+            this.slots = new long[1024 * width];
+        }
+
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        void add(long[] state, int base) {
+            int capacity = this.slots.length / this.width;
+            if (this.size == capacity) {
+                if (capacity > (Integer.MAX_VALUE - 8) / 2 / this.width) throw new RuntimeException("The BFS frontier is too large.");
+                // unroll the ring so that the head is at 0
+                long[] grown = new long[2 * this.slots.length];
+                int headSlots = this.head * this.width;
+                System.arraycopy(this.slots, headSlots, grown, 0, this.slots.length - headSlots);
+                System.arraycopy(this.slots, 0, grown, this.slots.length - headSlots, headSlots);
+                this.slots = grown;
+                this.head = 0;
+                capacity *= 2;
+            }
+            System.arraycopy(state, base, this.slots, ((this.head + this.size) % capacity) * this.width, this.width);
+            ++this.size;
+        }
+
+        void poll(long[] state) {
+            System.arraycopy(this.slots, this.head * this.width, state, 0, this.width);
+            this.head = (this.head + 1) % (this.slots.length / this.width);
+            --this.size;
+        }
+
+    }
+
+}
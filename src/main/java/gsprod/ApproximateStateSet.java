@@ -0,0 +1,50 @@
+package gsprod;
+
+/**
+ * A visited set of encoded product states that keeps no states, only hashes of them, in memory fixed up front. A new
+ * state may be taken for a visited one, so the exploration may omit states; the set estimates how many.
+ */
+public interface ApproximateStateSet {
+
+    /**
+     * Returns true if the state in slots at [base, base + width) is new, marking it as visited.
+     */
+    boolean add(long[] slots, int base);
+
+    /**
+     * Returns the number of states added.
+     */
+    long size();
+
+    /**
+     * Returns the expected number of new states that were taken for visited ones: the sum over the added states of the
+     * probability that the set would have rejected them.
+     */
+    double getExpectedOmissions();
+
+    /**
+     * Returns the probability that no state was omitted.
+     */
+    default double getCompleteProbability() {
+        return Math.exp(-this.getExpectedOmissions());
+    }
+
+    long getAllocatedBytes();
+
+    /**
+     * A 64-bit hash of the words of a state: the murmur3 finalizer applied after each word, starting from seed.
+     */
+    static long hash64(long[] slots, int base, int width, long seed) {
+        long h = seed;
+        for (int i = 0; i < width; ++i) {
+            h ^= slots[base + i];
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+        }
+        return h;
+    }
+
+}
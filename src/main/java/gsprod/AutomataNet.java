@@ -9,24 +9,27 @@ import java.util.stream.Collectors;
 
 public class AutomataNet {
 
-    private LinkedHashSet<String> actions;
+    private ActionTable actionTable;
     private ArrayList<Automaton> automata;
     public LinkedHashSet<String> getActions() {
-        return this.actions;
+        return this.actionTable.getSyncActions();
+    }
+    public ActionTable getActionTable() {
+        return this.actionTable;
     }
     public ArrayList<Automaton> getAutomata() {
         return this.automata;
     }
 
     public AutomataNet() {
-        this.actions = new LinkedHashSet<>();
+        this.actionTable = new ActionTable();
         this.automata = new ArrayList<>();
     }
 
     public void readActions(String fname) {
         try (Reader freader = new FileReader(fname)) {
             StreamTokenizer sttok = this.getStreamTokenizer(freader);
-            while (this.fetchToken(sttok) != null) actions.add(sttok.sval);
+            while (this.fetchToken(sttok) != null) this.actionTable.addSync(sttok.sval);
         } catch (FileNotFoundException ex) {
             System.err.println("File not found.");
         } catch (IOException ioex) {
@@ -56,7 +59,7 @@ public class AutomataNet {
             while (this.fetchToken(sttok) != null) {
                 String source = sttok.sval;
                 if (this.fetchToken(sttok) == null) throw new RuntimeException("Missing transition label.");
-                String transLabel = sttok.sval;
+                String transLabel = this.actionTable.canonical(sttok.sval);
                 if (this.fetchToken(sttok) == null) throw new RuntimeException("Missing transition target.");
                 String target = sttok.sval;
                 transitions.add(new Transition(source, transLabel, target));
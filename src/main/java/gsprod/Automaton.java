@@ -1,8 +1,10 @@
 package gsprod;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class Automaton {
@@ -13,28 +15,38 @@ public class Automaton {
     private boolean automataMarking;
     private String initial;
     private HashMap<String, ArrayList<Transition>> stateToTransitions;
-    private HashMap<String, Boolean> stateMarkings;
-    private static int ctr = 0;
+    private HashMap<String, Integer> stateIds;
+    private BitSet stateMarkings;
+    private static final AtomicInteger ctr = new AtomicInteger();
 
     public Automaton(ArrayList<String> states, ArrayList<Transition> transitions) {
         this.states = (ArrayList<String>) states.stream().distinct().collect(Collectors.toList());
         this.initial = this.states.get(0);
-        this.stateMarkings = new HashMap<>();
-        this.resetStateMarkings();
+        this.indexStates();
+        this.stateMarkings = new BitSet();
 
         this.actionLabels = new LinkedHashSet<>();
         this.stateToTransitions = new HashMap<>();
         for (Transition tran: transitions) this.addTransition(tran);
 
-        this.name = Integer.toString(++ctr);
+        this.name = Integer.toString(ctr.incrementAndGet());
     }
 
     public Automaton() {
+        this(Integer.toString(ctr.incrementAndGet()));
+    }
+
+    /**
+     * Makes an empty automaton with the given name, without taking a number from the automata counter. The products
+     * are named this way, so their names don't depend on the order in which parallel reductions finish.
+     */
+    public Automaton(String name) {
         this.states = new ArrayList<>();
-        this.stateMarkings = new HashMap<>();
+        this.stateIds = new HashMap<>();
+        this.stateMarkings = new BitSet();
         this.actionLabels = new LinkedHashSet<>();
         this.stateToTransitions = new HashMap<>();
-        this.name = Integer.toString(++ctr);
+        this.name = name;
     }
 
     public String getName() {
@@ -42,16 +54,32 @@ public class Automaton {
     }
 
     public static void resetAutomataCounter() {
-        ctr = 0;
+        ctr.set(0);
     }
 
+    /**
+     * Returns the states, the first one is initial. Don't modify the list directly, use addState.
+     */
     public ArrayList<String> getStates() {
         return this.states;
     }
 
     public void addState(String state) {
+        this.stateIds.put(state, this.states.size());
+        this.stateMarkings.clear(this.states.size());
         this.getStates().add(state);
-        this.stateMarkings.put(state, false);
+    }
+
+    public boolean containsState(String state) {
+        return this.stateIds.containsKey(state);
+    }
+
+    /**
+     * Rebuilds the index of positions of states in the states list.
+     */
+    private void indexStates() {
+        this.stateIds = new HashMap<>(2 * this.states.size());
+        for (int i = 0; i < this.states.size(); ++i) this.stateIds.put(this.states.get(i), i);
     }
 
     public String getInitial() {
@@ -63,7 +91,7 @@ public class Automaton {
     }
 
     public void setInitial(String initial) {
-        if (!this.states.contains(initial)) throw new RuntimeException("Setting unknown initial state:" + initial + ".");
+        if (!this.containsState(initial)) throw new RuntimeException("Setting unknown initial state:" + initial + ".");
         this.initial = initial;
     }
 
@@ -83,7 +111,7 @@ public class Automaton {
         if (!this.getStateToTransitions().containsKey(state)) this.getStateToTransitions().put(state, new ArrayList<>());
         if (!this.getStateToTransitions().containsKey(target)) this.getStateToTransitions().put(target, new ArrayList<>());
 
-        if (!this.states.contains(state) || !this.states.contains(target))
+        if (!this.containsState(state) || !this.containsState(target))
             throw new RuntimeException("Unknown source or target in transition " + tran + ".");
 
         this.getStateToTransitions().get(state).add(tran);
@@ -115,21 +143,24 @@ public class Automaton {
             this.markState(currState);
         }
 
-        this.states = (ArrayList<String>) this.states.stream().filter(this::isStateMarked).collect(Collectors.toList());
+        ArrayList<String> statesPruned = (ArrayList<String>) this.states.stream().filter(this::isStateMarked).collect(Collectors.toList());
 
         HashMap<String, ArrayList<Transition>> stateToTransitionsPruned = new HashMap<>();
-        for (String state: this.getStates()) {
-            if (this.isStateMarked(state)) {
-                stateToTransitionsPruned.put(state, new ArrayList<>());
-                if (this.getStateToTransitions().containsKey(state))
-                    for (Transition tran: this.getStateToTransitions().get(state)) {
-                        if (this.isStateMarked(tran.getSource()) && this.isStateMarked(tran.getTarget()))
-                            stateToTransitionsPruned.get(state).add(tran);
-                    }
-            }
+        for (String state: statesPruned) {
+            stateToTransitionsPruned.put(state, new ArrayList<>());
+            if (this.getStateToTransitions().containsKey(state))
+                for (Transition tran: this.getStateToTransitions().get(state)) {
+                    if (this.isStateMarked(tran.getSource()) && this.isStateMarked(tran.getTarget()))
+                        stateToTransitionsPruned.get(state).add(tran);
+                }
         }
 
+        // the remaining states stay marked
+        this.states = statesPruned;
         this.stateToTransitions = stateToTransitionsPruned;
+        this.indexStates();
+        this.stateMarkings.clear();
+        this.stateMarkings.set(0, this.states.size());
     }
 
     @Override
@@ -179,6 +210,7 @@ public class Automaton {
 
         this.states = newStates;
         this.stateToTransitions = newStateToTransitions;
+        this.indexStates();
         this.resetStateMarkings();
     }
 
@@ -236,21 +268,23 @@ public class Automaton {
 
     // these are labels of states of automata
     public void resetStateMarkings() {
-        for (String state: this.getStates()) this.stateMarkings.put(state, false);
+        this.stateMarkings.clear();
     }
 
     /**
-     * Returns true iff state is *not present* or is marked.
+     * Returns true iff state is present and is marked.
      */
     public boolean isStateMarked(String state) {
-        return this.states.contains(state) && this.stateMarkings.get(state);
+        Integer id = this.stateIds.get(state);
+        return id != null && this.stateMarkings.get(id);
     }
 
     /**
-     * Marks an *existing* state.
+     * Marks an *existing* state, unknown states are ignored.
      */
     public void markState(String state) {
-        this.stateMarkings.put(state, true);
+        Integer id = this.stateIds.get(state);
+        if (id != null) this.stateMarkings.set(id);
     }
 
 }
\ No newline at end of file
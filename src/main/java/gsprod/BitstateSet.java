@@ -0,0 +1,85 @@
+package gsprod;
+
+/**
+ * Bitstate hashing (supertrace): a state is visited if the bits of its hashCount hashes are all set in a bit array of
+ * fixed size. The hashes are h1 + i * h2 for two 64-bit hashes of the state. A new state is omitted if all its bits
+ * were set by other states, which happens with the probability f^hashCount for the fraction f of the bits set.
+ */
+public class BitstateSet implements ApproximateStateSet {
+
+    private final int width;
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private long setBits;
+    private long size;
+    private double expectedOmissions;
+
+    /**
+     * Makes a set of the given number of bytes (rounded down to longs) and hashes per state.
+     */
+    public BitstateSet(int width, long bytes, int hashCount) {
+        if (bytes < Long.BYTES || bytes / Long.BYTES > Integer.MAX_VALUE - 8)
+            throw new RuntimeException("The bit array must have from 8 bytes to 16 GiB.");
+        if (hashCount < 1) throw new RuntimeException("The number of hashes must be positive.");
+        this.width = width;
+        this.bits = new long[(int) (bytes / Long.BYTES)];
+        this.bitCount = (long) this.bits.length * Long.SIZE;
+        this.hashCount = hashCount;
+    }
+
+    @Override
+    public boolean add(long[] slots, int base) {
+        long h1 = ApproximateStateSet.hash64(slots, base, this.width, 0L);
+        long h2 = ApproximateStateSet.hash64(slots, base, this.width, 0x9e3779b97f4a7c15L) | 1L;
+        // the probability that this state would have been rejected if it is new, taken before its bits are set
+        double falsePositive = this.getFalsePositiveProbability();
+        boolean added = false;
+        for (int i = 0; i < this.hashCount; ++i) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, this.bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((this.bits[word] & mask) == 0) {
+                this.bits[word] |= mask;
+                ++this.setBits;
+                added = true;
+            }
+        }
+        if (!added) return false;
+
+        ++this.size;
+        this.expectedOmissions += falsePositive;
+        return true;
+    }
+
+    /**
+     * Returns the probability that a new state is now taken for a visited one.
+     */
+    public double getFalsePositiveProbability() {
+        return Math.pow((double) this.setBits / this.bitCount, this.hashCount);
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public double getExpectedOmissions() {
+        return this.expectedOmissions;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return 8L * this.bits.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("bitstate: %d states in %d bits with %d hashes, %.4f of the bits set, " +
+                        "false positive probability %.3g, expected omissions %.3g, probability of no omission %.6f",
+                this.size, this.bitCount, this.hashCount, (double) this.setBits / this.bitCount,
+                this.getFalsePositiveProbability(), this.expectedOmissions, this.getCompleteProbability());
+    }
+
+}
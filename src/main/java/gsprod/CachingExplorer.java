@@ -0,0 +1,147 @@
+package gsprod;
+
+import java.util.Arrays;
+
+/**
+ * The single-threaded depth-first exploration with a StateCache of bounded size instead of a visited set of all the
+ * states, for the topmost level of the composition. The states of the search path are pinned in the cache, so the
+ * search terminates; a state that was evicted is explored again when it is reached again. A state that the cache
+ * remembers as evicted is only overhead: the transitions to it have target -1, as in ApproximateExplorer, and its
+ * transitions are not passed again, so only the sinks that ignore the targets, as ProductStatistics, get a meaningful
+ * product. An evicted state whose fingerprint was forgotten is counted again under a new number, so after an eviction
+ * the numbers of states and transitions are upper bounds; without evictions they are exact.
+ * <p>
+ * The successors of the states of the path wait in a stack of encoded states, so the memory beyond the cache is
+ * proportional to the depth of the search times the out-degree.
+ */
+public class CachingExplorer implements ProductExplorer {
+
+    private final long cacheBytes;
+    private final StateCache.Policy policy;
+
+    public CachingExplorer(long cacheBytes, StateCache.Policy policy) {
+        this.cacheBytes = cacheBytes;
+        this.policy = policy;
+    }
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        int width = level.getWidth();
+        StateCache cache = new StateCache(width, this.cacheBytes, this.policy);
+        SuccessorStack successors = new SuccessorStack(width);
+        long[] curr = new long[width];
+        long[] succ = new long[width];
+
+        // the path: the cache entry and the number of each state, and the range of its successors in the stack, the
+        // ones before the cursor being done
+        int[] entries = new int[64];
+        int[] ids = new int[64];
+        int[] starts = new int[64];
+        int[] cursors = new int[64];
+        int[] ends = new int[64];
+
+        // the dummy initial state 0 is not cached, its successors are the initial states of the level
+        for (int i = 0; i < level.getInitialCount(); ++i) {
+            level.encodeInitial(i, succ, 0);
+            successors.push(level.getEpsilon(), succ, 0);
+        }
+        ends[0] = successors.size();
+        int depth = 1;
+        int stateCount = 1;
+        long reexplored = 0;
+
+        while (depth > 0) {
+            int top = depth - 1;
+            if (cursors[top] == ends[top]) {
+                if (top > 0) cache.unpin(entries[top]);
+                successors.truncate(starts[top]);
+                --depth;
+                continue;
+            }
+
+            int next = cursors[top]++;
+            int entry = cache.find(successors.getStates(), successors.base(next));
+            if (entry >= 0) {
+                if (ids[top] >= 0) product.addTransition(ids[top], successors.getLabel(next), cache.getId(entry));
+                continue;
+            }
+
+            // the successors of a state explored again were reached before, so it passes no transitions
+            int id = -1;
+            if (cache.wasEvicted(successors.getStates(), successors.base(next))) {
+                ++reexplored;
+            } else {
+                if (stateCount == Integer.MAX_VALUE) throw new RuntimeException("Too many states for int ids.");
+                id = stateCount++;
+            }
+            if (ids[top] >= 0) product.addTransition(ids[top], successors.getLabel(next), id);
+            if (depth == entries.length) {
+                entries = Arrays.copyOf(entries, 2 * depth);
+                ids = Arrays.copyOf(ids, 2 * depth);
+                starts = Arrays.copyOf(starts, 2 * depth);
+                cursors = Arrays.copyOf(cursors, 2 * depth);
+                ends = Arrays.copyOf(ends, 2 * depth);
+            }
+            entries[depth] = cache.addPinned(successors.getStates(), successors.base(next), id, depth);
+            ids[depth] = id;
+            System.arraycopy(successors.getStates(), successors.base(next), curr, 0, width);
+            starts[depth] = successors.size();
+            cursors[depth] = starts[depth];
+            level.expand(curr, succ, successors::push);
+            ends[depth] = successors.size();
+            ++depth;
+        }
+
+        product.addReport(String.format("state cache: %s; %s%d states, %d more explorations of evicted ones (%.1f%% overhead)",
+                cache, cache.getEvictions() > 0 ? "at most " : "", stateCount, reexplored, 100.0 * reexplored / stateCount));
+        product.setStateCount(stateCount);
+    }
+
+    /**
+     * A stack of labelled encoded states.
+     */
+    private static class SuccessorStack {
+
+        private final int width;
+        private int[] labels = new int[64];
+        private long[] states;
+        private int size;
+
+        SuccessorStack(int width) {
+            this.width = width;
+            this.states = new long[64 * width];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        void push(int label, long[] slots, int base) {
+            if (this.size == this.labels.length) {
+                this.labels = Arrays.copyOf(this.labels, 2 * this.size);
+                this.states = Arrays.copyOf(this.states, 2 * this.size * this.width);
+            }
+            this.labels[this.size] = label;
+            System.arraycopy(slots, base, this.states, this.size * this.width, this.width);
+            ++this.size;
+        }
+
+        void truncate(int size) {
+            this.size = size;
+        }
+
+        int getLabel(int i) {
+            return this.labels[i];
+        }
+
+        long[] getStates() {
+            return this.states;
+        }
+
+        int base(int i) {
+            return i * this.width;
+        }
+
+    }
+
+}
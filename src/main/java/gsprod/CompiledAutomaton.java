@@ -0,0 +1,334 @@
+package gsprod;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A frozen, compiled form of an automaton. States are numbered 0..n-1 in the order of Automaton.getStates(),
+ * so the initial state is always 0, and labels are the ids of the net's ActionTable.
+ * The outgoing transitions of state s occupy positions [firstTransition(s), lastTransition(s)) of the
+ * compressed-sparse-row arrays labels and targets. The original names are kept on the side for output only.
+ * <p>
+ * The transitions of each state are sorted by label and indexed by label groups: the groups of state s are
+ * [firstGroup(s), lastGroup(s)), sorted by label, and group g holds the transitions [groupStart(g), groupEnd(g)),
+ * all labelled with getGroupLabel(g). This allows finding the transitions of a state with a given label by a lookup
+ * and matching the transitions of two states by a merge.
+ * <p>
+ * As an ImplicitAutomaton, a state is encoded by its number.
+ */
+public class CompiledAutomaton implements ImplicitAutomaton {
+
+    private final String name;
+    private final String[] stateNames;
+    private final HashMap<String, Integer> stateIds;
+    private final int[] offsets;
+    private final int[] labels;
+    private final int[] targets;
+    private final int[] groupOffsets;
+    private final int[] groupLabels;
+    private final int[] groupStarts;
+    private final BitSet labelSet;
+
+    private CompiledAutomaton(String name, String[] stateNames, HashMap<String, Integer> stateIds,
+                              int[] offsets, int[] labels, int[] targets, BitSet labelSet) {
+        this.name = name;
+        this.stateNames = stateNames;
+        this.stateIds = stateIds;
+        this.offsets = offsets;
+        this.labels = labels;
+        this.targets = targets;
+
+        // the transitions are sorted, so the groups of consecutive states are consecutive and the last start is the end
+        int stateCount = stateNames.length;
+        this.groupOffsets = new int[stateCount + 1];
+        int groupCount = 0;
+        for (int s = 0; s < stateCount; ++s) {
+            for (int t = offsets[s]; t < offsets[s + 1]; ++t)
+                if (t == offsets[s] || labels[t] != labels[t - 1]) ++groupCount;
+            this.groupOffsets[s + 1] = groupCount;
+        }
+
+        this.groupLabels = new int[groupCount];
+        this.groupStarts = new int[groupCount + 1];
+        int group = 0;
+        for (int s = 0; s < stateCount; ++s) {
+            for (int t = offsets[s]; t < offsets[s + 1]; ++t) {
+                if (t == offsets[s] || labels[t] != labels[t - 1]) {
+                    this.groupLabels[group] = labels[t];
+                    this.groupStarts[group] = t;
+                    ++group;
+                }
+            }
+        }
+        this.groupStarts[groupCount] = labels.length;
+        this.labelSet = labelSet;
+    }
+
+    /**
+     * Makes an automaton without states, for the subclasses that keep their transitions elsewhere.
+     */
+    protected CompiledAutomaton(String name, BitSet labelSet) {
+        this(name, new String[0], new HashMap<>(), new int[1], new int[0], new int[0], labelSet);
+    }
+
+    /**
+     * Compiles the automaton. The labels that are not yet known to the table are interned as local ones.
+     */
+    public static CompiledAutomaton compile(Automaton automaton, ActionTable actions) {
+        ArrayList<String> states = automaton.getStates();
+        int stateCount = states.size();
+        String[] stateNames = states.toArray(new String[stateCount]);
+        HashMap<String, Integer> stateIds = new HashMap<>(2 * stateCount);
+        for (int i = 0; i < stateCount; ++i) stateIds.put(stateNames[i], i);
+
+        int[] offsets = new int[stateCount + 1];
+        for (int i = 0; i < stateCount; ++i) {
+            ArrayList<Transition> outgoing = automaton.getStateToTransitions().get(stateNames[i]);
+            offsets[i + 1] = offsets[i] + (outgoing == null ? 0 : outgoing.size());
+        }
+
+        // the transitions of a state are sorted by (label, target), packed into a long
+        long[] packed = new long[offsets[stateCount]];
+        for (int i = 0; i < stateCount; ++i) {
+            ArrayList<Transition> outgoing = automaton.getStateToTransitions().get(stateNames[i]);
+            if (outgoing == null) continue;
+
+            int pos = offsets[i];
+            for (Transition tran: outgoing) {
+                Integer target = stateIds.get(tran.getTarget());
+                if (target == null) throw new RuntimeException("Unknown target in transition " + tran + ".");
+                packed[pos++] = ((long) actions.intern(tran.getLabel()) << 32) | target;
+            }
+            Arrays.sort(packed, offsets[i], offsets[i + 1]);
+        }
+
+        // the alphabet may be larger than the set of labels of transitions, e.g., after removing unreachable states
+        BitSet labelSet = new BitSet();
+        for (String label: automaton.getActionLabels()) labelSet.set(actions.intern(label));
+
+        int[] labels = new int[packed.length];
+        int[] targets = new int[packed.length];
+        for (int i = 0; i < packed.length; ++i) {
+            labels[i] = (int) (packed[i] >>> 32);
+            targets[i] = (int) packed[i];
+        }
+
+        return new CompiledAutomaton(automaton.getName(), stateNames, stateIds, offsets, labels, targets, labelSet);
+    }
+
+    /**
+     * Compiles the product collected by the builder, its states being named "0", "1", ... like in
+     * ProductBuilder.toAutomaton, without building the Automaton.
+     */
+    public static CompiledAutomaton compile(ProductBuilder product, ActionTable actions, String name) {
+        int stateCount = product.getStateCount();
+        String[] stateNames = new String[stateCount];
+        HashMap<String, Integer> stateIds = new HashMap<>(2 * stateCount);
+        for (int i = 0; i < stateCount; ++i) {
+            stateNames[i] = String.valueOf(i);
+            stateIds.put(stateNames[i], i);
+        }
+
+        int transitionCount = product.getTransitionCount();
+        int[] offsets = new int[stateCount + 1];
+        for (int i = 0; i < transitionCount; ++i) ++offsets[product.getSource(i) + 1];
+        for (int i = 0; i < stateCount; ++i) offsets[i + 1] += offsets[i];
+
+        // the transitions of a state are sorted by (label, target), packed into a long
+        long[] packed = new long[transitionCount];
+        int[] next = Arrays.copyOf(offsets, stateCount);
+        for (int i = 0; i < transitionCount; ++i)
+            packed[next[product.getSource(i)]++] = ((long) product.getLabel(i) << 32) | product.getTarget(i);
+        for (int i = 0; i < stateCount; ++i) Arrays.sort(packed, offsets[i], offsets[i + 1]);
+
+        BitSet labelSet = new BitSet();
+        int[] labels = new int[packed.length];
+        int[] targets = new int[packed.length];
+        for (int i = 0; i < packed.length; ++i) {
+            labels[i] = (int) (packed[i] >>> 32);
+            targets[i] = (int) packed[i];
+            labelSet.set(labels[i]);
+        }
+
+        return new CompiledAutomaton(name, stateNames, stateIds, offsets, labels, targets, labelSet);
+    }
+
+    /**
+     * Writes the automaton in a binary form that can be read by read. The labels are written as ids, so the automaton
+     * can only be read back with the same ActionTable, e.g., when it is spilled to a temporary file.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeUTF(this.name);
+        out.writeInt(this.stateNames.length);
+        for (String state: this.stateNames) out.writeUTF(state);
+        for (int offset: this.offsets) out.writeInt(offset);
+        for (int i = 0; i < this.labels.length; ++i) {
+            out.writeInt(this.labels[i]);
+            out.writeInt(this.targets[i]);
+        }
+        out.writeInt(this.labelSet.cardinality());
+        for (int label = this.labelSet.nextSetBit(0); label >= 0; label = this.labelSet.nextSetBit(label + 1)) out.writeInt(label);
+    }
+
+    public static CompiledAutomaton read(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        int stateCount = in.readInt();
+        String[] stateNames = new String[stateCount];
+        HashMap<String, Integer> stateIds = new HashMap<>(2 * stateCount);
+        for (int i = 0; i < stateCount; ++i) {
+            stateNames[i] = in.readUTF();
+            stateIds.put(stateNames[i], i);
+        }
+
+        int[] offsets = new int[stateCount + 1];
+        for (int i = 0; i <= stateCount; ++i) offsets[i] = in.readInt();
+        int[] labels = new int[offsets[stateCount]];
+        int[] targets = new int[offsets[stateCount]];
+        for (int i = 0; i < labels.length; ++i) {
+            labels[i] = in.readInt();
+            targets[i] = in.readInt();
+        }
+
+        BitSet labelSet = new BitSet();
+        for (int i = in.readInt(); i > 0; --i) labelSet.set(in.readInt());
+
+        return new CompiledAutomaton(name, stateNames, stateIds, offsets, labels, targets, labelSet);
+    }
+
+    /**
+     * Returns an estimate of the heap taken by the automaton: its arrays, the names of states and their index.
+     */
+    public long getAllocatedBytes() {
+        long arrays = this.offsets.length + 2L * this.labels.length + this.groupOffsets.length + this.groupLabels.length
+                + this.groupStarts.length;
+        return 4 * arrays + 112L * this.stateNames.length;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public int getBits() {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(this.getStateBound() - 1));
+    }
+
+    @Override
+    public void encodeInitial(long[] slots, int base) {
+        slots[base] = this.getInitial();
+    }
+
+    @Override
+    public void successors(long[] curr, int base, long[] succ, SuccessorConsumer out) {
+        int state = (int) curr[base];
+        for (int trans = this.firstTransition(state); trans < this.lastTransition(state); ++trans) {
+            succ[0] = this.getTarget(trans);
+            out.accept(this.getLabel(trans), succ, 0);
+        }
+    }
+
+    @Override
+    public boolean hasLabel(int label) {
+        return this.getLabelSet().get(label);
+    }
+
+    public int getInitial() {
+        return 0;
+    }
+
+    public int getStateCount() {
+        return this.stateNames.length;
+    }
+
+    /**
+     * Returns an upper bound on the number of states, which is known before the states themselves, e.g., for an
+     * automaton that is still being produced. Here it is the number of states.
+     */
+    public int getStateBound() {
+        return this.getStateCount();
+    }
+
+    public int getTransitionCount() {
+        return this.labels.length;
+    }
+
+    public int firstTransition(int state) {
+        return this.offsets[state];
+    }
+
+    public int lastTransition(int state) {
+        return this.offsets[state + 1];
+    }
+
+    public int getLabel(int transition) {
+        return this.labels[transition];
+    }
+
+    public int getTarget(int transition) {
+        return this.targets[transition];
+    }
+
+    /**
+     * Returns the set of ids of the labels of the alphabet of the automaton. Don't modify it.
+     */
+    @Override
+    public BitSet getLabelSet() {
+        return this.labelSet;
+    }
+
+    public int firstGroup(int state) {
+        return this.groupOffsets[state];
+    }
+
+    public int lastGroup(int state) {
+        return this.groupOffsets[state + 1];
+    }
+
+    public int getGroupLabel(int group) {
+        return this.groupLabels[group];
+    }
+
+    public int groupStart(int group) {
+        return this.groupStarts[group];
+    }
+
+    public int groupEnd(int group) {
+        return this.groupStarts[group + 1];
+    }
+
+    /**
+     * Returns the group of the transitions of state labelled with label or -1 if there are none.
+     */
+    public int findGroup(int state, int label) {
+        int low = this.groupOffsets[state];
+        int high = this.groupOffsets[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midLabel = this.groupLabels[mid];
+            if (midLabel < label) low = mid + 1;
+            else if (midLabel > label) high = mid - 1;
+            else return mid;
+        }
+
+        return -1;
+    }
+
+    public String getStateName(int state) {
+        return this.stateNames[state];
+    }
+
+    /**
+     * Returns the id of the named state or -1 if there is no such state.
+     */
+    public int getStateId(String state) {
+        Integer id = this.stateIds.get(state);
+        return id == null ? -1 : id;
+    }
+
+}
@@ -0,0 +1,236 @@
+package gsprod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps the intermediate products of the composition tree within a memory budget. A finished product waits for its
+ * siblings in its compiled form, which is much smaller than an Automaton; when the waiting products exceed the budget,
+ * the largest ones are spilled to temporary files and read back by their parent level, which releases them as soon as
+ * its own exploration starts. A level reserves the size of its operands while exploring, and a level of a parallel
+ * reduction waits for room unless no other level is exploring. The sequential reduction starts with the children of
+ * the largest bound on the product, so that the biggest explorations run while few finished siblings wait.
+ */
+public class CompositionScheduler {
+
+    /**
+     * A finished subtree: either an automaton of the net (a leaf, never counted nor spilled) or an intermediate product.
+     */
+    public static class Product {
+
+        private final Automaton leaf;
+        private CompiledAutomaton compiled;
+        private Path file;
+        private final long bytes;
+
+        private Product(Automaton leaf, CompiledAutomaton compiled) {
+            this.leaf = leaf;
+            this.compiled = compiled;
+            this.bytes = compiled == null ? 0 : compiled.getAllocatedBytes();
+        }
+
+        public boolean isSpilled() {
+            return this.file != null;
+        }
+
+    }
+
+    private final ActionTable actions;
+    private final long budget;
+    private final Path spillDir;
+    private final ArrayList<Product> waiting;
+    private long waitingBytes;
+    private long exploringBytes;
+    private int exploring;
+    private long peakBytes;
+    private int spills;
+    private long spilledBytes;
+
+    /**
+     * Makes a scheduler for the given budget in bytes (no limit if it is not positive). The spilled products go to
+     * spillDir or to the default temporary directory if it is null.
+     */
+    public CompositionScheduler(ActionTable actions, long budget, Path spillDir) {
+        this.actions = actions;
+        this.budget = budget > 0 ? budget : Long.MAX_VALUE;
+        this.spillDir = spillDir;
+        this.waiting = new ArrayList<>();
+    }
+
+    public boolean isLimited() {
+        return this.budget < Long.MAX_VALUE;
+    }
+
+    public Product leaf(Automaton automaton) {
+        return new Product(automaton, null);
+    }
+
+    /**
+     * Registers a finished product that waits for its parent, spilling the largest waiting products if they don't fit.
+     */
+    public Product hold(CompiledAutomaton compiled) {
+        Product product = new Product(null, compiled);
+        ArrayList<Product> toSpill = new ArrayList<>();
+        synchronized (this) {
+            this.waiting.add(product);
+            this.waitingBytes += product.bytes;
+            this.peakBytes = Math.max(this.peakBytes, this.waitingBytes + this.exploringBytes);
+
+            this.waiting.sort(Comparator.comparingLong((Product waiting) -> waiting.bytes).reversed());
+            long bytes = this.waitingBytes + this.exploringBytes;
+            for (Product waiting: this.waiting) {
+                if (bytes <= this.budget) break;
+                if (waiting.compiled == null || waiting.file != null) continue;
+                toSpill.add(waiting);
+                bytes -= waiting.bytes;
+            }
+        }
+
+        for (Product spilled: toSpill) this.spill(spilled);
+        return product;
+    }
+
+    /**
+     * Returns the compiled automaton of the product, reading it back if it was spilled. The product stops being
+     * counted, the caller owns the result.
+     */
+    public CompiledAutomaton take(Product product) {
+        if (product.leaf != null) return CompiledAutomaton.compile(product.leaf, this.actions);
+
+        CompiledAutomaton compiled;
+        synchronized (product) {
+            compiled = product.compiled != null ? product.compiled : this.unspill(product);
+            product.compiled = null;
+        }
+        synchronized (this) {
+            if (this.waiting.remove(product)) this.waitingBytes -= product.bytes;
+        }
+        return compiled;
+    }
+
+    /**
+     * Waits until a level with operands of the given size fits in the budget; a level never waits for itself, so
+     * one exploring level is always allowed.
+     */
+    public void beginLevel(long bytes) {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    synchronized (CompositionScheduler.this) {
+                        while (!this.isReleasable()) CompositionScheduler.this.wait();
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    synchronized (CompositionScheduler.this) {
+                        if (exploring > 0 && waitingBytes + exploringBytes + bytes > budget) return false;
+                        ++exploring;
+                        exploringBytes += bytes;
+                        peakBytes = Math.max(peakBytes, waitingBytes + exploringBytes);
+                        return true;
+                    }
+                }
+            });
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted composition.", iex);
+        }
+    }
+
+    public synchronized void endLevel(long bytes) {
+        --this.exploring;
+        this.exploringBytes -= bytes;
+        this.notifyAll();
+    }
+
+    /**
+     * Returns the order in which the sync children of root should be reduced: by a decreasing bound on the number of
+     * states of their products if the budget is limited, otherwise the order of children.
+     */
+    public Integer[] order(ArrayList<Automaton> syncChildren, ArrayList<Automaton> children) {
+        Integer[] order = new Integer[syncChildren.size()];
+        for (int i = 0; i < order.length; ++i) order[i] = i;
+        if (!this.isLimited()) return order;
+
+        double[] bounds = new double[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            Automaton child = syncChildren.get(i);
+            bounds[i] = this.bound(child, GSQProduct.otherChildren(children, child));
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> bounds[i]).reversed());
+        return order;
+    }
+
+    /**
+     * A bound on the number of states of the product of the subtree: a state is a root state, an active child, its
+     * state and the memory of all the children.
+     */
+    private double bound(Automaton root, ArrayList<Automaton> children) {
+        ArrayList<Automaton> syncChildren = GSQProduct.discoverChildren(root, children, this.actions);
+        double bound = root.getStates().size() * (double) Math.max(1, syncChildren.size());
+        double maxChildBound = 1;
+        for (Automaton child: syncChildren) {
+            double childBound = this.bound(child, GSQProduct.otherChildren(children, child));
+            bound *= childBound;
+            maxChildBound = Math.max(maxChildBound, childBound);
+        }
+        return bound * maxChildBound;
+    }
+
+    private void spill(Product product) {
+        synchronized (product) {
+            if (product.compiled == null) return;
+            try {
+                Path file = this.spillDir == null ? Files.createTempFile("gsq-spill", ".bin")
+                        : Files.createTempFile(this.spillDir, "gsq-spill", ".bin");
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                    product.compiled.write(out);
+                }
+                product.file = file;
+                product.compiled = null;
+            } catch (IOException ioex) {
+                throw new UncheckedIOException("Cannot spill a product: " + ioex.getMessage(), ioex);
+            }
+        }
+
+        synchronized (this) {
+            if (this.waiting.remove(product)) this.waitingBytes -= product.bytes;
+            ++this.spills;
+            this.spilledBytes += product.bytes;
+        }
+    }
+
+    private CompiledAutomaton unspill(Product product) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(product.file)))) {
+            return CompiledAutomaton.read(in);
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("Cannot read a spilled product: " + ioex.getMessage(), ioex);
+        } finally {
+            try {
+                Files.deleteIfExists(product.file);
+            } catch (IOException ignored) {
+                // a leftover temporary file
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("budget %d bytes, peak %d bytes of waiting and exploring products, %d spills (%d bytes)",
+                this.budget, this.peakBytes, this.spills, this.spilledBytes);
+    }
+
+}
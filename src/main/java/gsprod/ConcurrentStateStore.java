@@ -0,0 +1,166 @@
+package gsprod;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A StateStore shared by many threads, with a lock-free insert-if-absent. The open-addressing table is allocated up
+ * front with a fixed number of buckets (a power of 2) and holds id + 1, 0 for an empty bucket or BUSY while the state
+ * of a freshly claimed bucket is being written. A thread claims an empty bucket by a CAS to BUSY, takes the next id,
+ * writes the state to the paged arena and publishes the id by a volatile write; the threads probing a BUSY bucket wait
+ * for the few writes to finish. The ids are dense, in the order of claims. At most 3/4 of the buckets can be used.
+ */
+public class ConcurrentStateStore implements StateStore {
+
+    private static final int EMPTY = 0;
+    private static final int BUSY = -1;
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final int width;
+    private final AtomicIntegerArray table;
+    private final int mask;
+    private final int capacity;
+    private final AtomicInteger size;
+    private final AtomicReferenceArray<long[]> statePages;
+    private final AtomicReferenceArray<int[]> hashPages;
+
+    private final LongAdder lookups;
+    private final LongAdder hits;
+    private final LongAdder probes;
+
+    /**
+     * Makes a store with 2^log2Buckets buckets.
+     */
+    public ConcurrentStateStore(int width, int log2Buckets) {
+        if (log2Buckets < 4 || log2Buckets > 30) throw new RuntimeException("The table size must be in [2^4, 2^30].");
+        this.width = width;
+        this.table = new AtomicIntegerArray(1 << log2Buckets);
+        this.mask = (1 << log2Buckets) - 1;
+        this.capacity = 3 * (1 << (log2Buckets - 2));
+        this.size = new AtomicInteger();
+        int pageCount = (this.table.length() + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+        this.statePages = new AtomicReferenceArray<>(pageCount);
+        this.hashPages = new AtomicReferenceArray<>(pageCount);
+        this.lookups = new LongAdder();
+        this.hits = new LongAdder();
+        this.probes = new LongAdder();
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public int add(long[] slots, int base) {
+        int claimed = this.claim(slots, base);
+        return claimed >= 0 ? claimed : -claimed - 1;
+    }
+
+    /**
+     * Inserts the state if it is absent. Returns its id if this call inserted it and -id - 1 if it was present.
+     */
+    public int claim(long[] slots, int base) {
+        this.lookups.increment();
+        int hash = HeapStateStore.hash(slots, base, this.width);
+        int pos = hash & this.mask;
+        int probeLength = 0;
+
+        while (true) {
+            int entry = this.table.get(pos);
+            if (entry == EMPTY) {
+                if (this.size.get() >= this.capacity)
+                    throw new RuntimeException("The concurrent state store is full: " + this.capacity + " states fit in "
+                            + this.table.length() + " buckets, use a larger table.");
+                if (!this.table.compareAndSet(pos, EMPTY, BUSY)) continue;
+
+                int id = this.size.getAndIncrement();
+                System.arraycopy(slots, base, this.statePages(id), (id & (PAGE_SIZE - 1)) * this.width, this.width);
+                this.hashPages(id)[id & (PAGE_SIZE - 1)] = hash;
+                this.table.set(pos, id + 1);
+                this.probes.add(probeLength);
+                return id;
+            }
+            if (entry == BUSY) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            ++probeLength;
+            int id = entry - 1;
+            if (this.hashPages.get(id >>> PAGE_SHIFT)[id & (PAGE_SIZE - 1)] == hash && this.equalsStored(id, slots, base)) {
+                this.hits.increment();
+                this.probes.add(probeLength);
+                return -id - 1;
+            }
+            pos = (pos + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Copies the state with the given id to slots at [base, base + width). The id must have been obtained from this
+     * store by the calling thread or passed to it with a happens-before edge, e.g., by a task submission.
+     */
+    @Override
+    public void get(int id, long[] slots, int base) {
+        System.arraycopy(this.statePages.get(id >>> PAGE_SHIFT), (id & (PAGE_SIZE - 1)) * this.width, slots, base, this.width);
+    }
+
+    private long[] statePages(int id) {
+        int page = id >>> PAGE_SHIFT;
+        long[] states = this.statePages.get(page);
+        if (states == null) {
+            this.statePages.compareAndSet(page, null, new long[PAGE_SIZE * this.width]);
+            states = this.statePages.get(page);
+        }
+        return states;
+    }
+
+    private int[] hashPages(int id) {
+        int page = id >>> PAGE_SHIFT;
+        int[] hashes = this.hashPages.get(page);
+        if (hashes == null) {
+            this.hashPages.compareAndSet(page, null, new int[PAGE_SIZE]);
+            hashes = this.hashPages.get(page);
+        }
+        return hashes;
+    }
+
+    private boolean equalsStored(int id, long[] slots, int base) {
+        long[] page = this.statePages.get(id >>> PAGE_SHIFT);
+        int stored = (id & (PAGE_SIZE - 1)) * this.width;
+        for (int i = 0; i < this.width; ++i) if (page[stored + i] != slots[base + i]) return false;
+        return true;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        long bytes = 4L * this.table.length();
+        for (int page = 0; page < this.statePages.length(); ++page)
+            if (this.statePages.get(page) != null) bytes += 8L * PAGE_SIZE * this.width + 4L * PAGE_SIZE;
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        long lookups = this.lookups.sum();
+        long hits = this.hits.sum();
+        return String.format("%d of %d concurrent states (%d longs each), %d lookups: %d hits, %d misses, " +
+                        "avg probe length %.2f, %.1f bytes per state", this.size(), this.capacity, this.width, lookups,
+                hits, lookups - hits, lookups == 0 ? 0 : (double) this.probes.sum() / lookups,
+                this.size() == 0 ? 0 : (double) this.getAllocatedBytes() / this.size());
+    }
+
+}
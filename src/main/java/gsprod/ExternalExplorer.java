@@ -0,0 +1,479 @@
+package gsprod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The breadth-first exploration in external memory, with delayed duplicate detection: no visited set is kept in memory,
+ * the visited states are a file of (state, number) records sorted by state. The transitions found by expanding a BFS
+ * layer are (target state, source, label) records, collected in a buffer of fixed size that is sorted by target and
+ * written to a run file whenever it is full. Then a single streaming merge of the runs with the visited file numbers the
+ * new targets, passes the transitions to the sink, writes the new layer and writes the visited file of the next layer;
+ * so all the disk accesses are sequential and the memory doesn't depend on the size of the product.
+ * <p>
+ * The states of a layer are numbered in the order of their encodings, so the numbering differs from SequentialExplorer.
+ */
+public class ExternalExplorer implements ProductExplorer {
+
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final long bufferBytes;
+    private final Path dir;
+
+    private long runs;
+    private long bytesWritten;
+
+    /**
+     * Makes an explorer sorting at most about bufferBytes of transitions in memory, with the files in dir, or in the
+     * temporary directory if dir is null.
+     */
+    public ExternalExplorer(long bufferBytes, Path dir) {
+        this.bufferBytes = bufferBytes;
+        this.dir = dir;
+    }
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        int width = level.getWidth();
+        long[] curr = new long[width + 1];
+        long[] succ = new long[width];
+        ArrayList<Path> files = new ArrayList<>();
+        try {
+            // the layers of (state, number) records, the visited ones and the transitions of the last layer
+            Path visited = null;
+            long visitedCount = 0;
+            RunSorter transitions = new RunSorter(width, this.bufferBytes, files);
+            for (int i = 0; i < level.getInitialCount(); ++i) {
+                level.encodeInitial(i, succ, 0);
+                transitions.add(succ, 0, level.getEpsilon());
+            }
+
+            int stateCount = 1;
+            int layers = 0;
+            while (transitions.size() > 0) {
+                Path nextVisited = this.newFile(files);
+                Path layer = this.newFile(files);
+                long layerCount;
+                try (RecordReader targets = transitions.sorted();
+                     RecordReader visitedIn = visited == null ? new FileReader(null, width + 1, 0) : new FileReader(visited, width + 1, visitedCount);
+                     RecordWriter visitedOut = new RecordWriter(nextVisited, width + 1);
+                     RecordWriter layerOut = new RecordWriter(layer, width + 1)) {
+                    long[] record = new long[width + 1];
+                    while (targets.hasNext()) {
+                        long[] target = targets.peek();
+
+                        // copy the visited states before the target, then take the target's number or number it
+                        while (visitedIn.hasNext() && compare(visitedIn.peek(), target, width) < 0) visitedOut.write(visitedIn.next());
+                        int id;
+                        if (visitedIn.hasNext() && compare(visitedIn.peek(), target, width) == 0) {
+                            id = (int) visitedIn.peek()[width];
+                            visitedOut.write(visitedIn.next());
+                        } else {
+                            if (stateCount == Integer.MAX_VALUE) throw new RuntimeException("Too many states for int ids.");
+                            id = stateCount++;
+                            System.arraycopy(target, 0, record, 0, width);
+                            record[width] = id;
+                            visitedOut.write(record);
+                            layerOut.write(record);
+                        }
+
+                        System.arraycopy(target, 0, record, 0, width);
+                        while (targets.hasNext() && compare(targets.peek(), record, width) == 0) {
+                            long sourceLabel = targets.next()[width];
+                            product.addTransition((int) (sourceLabel >>> 32), (int) sourceLabel, id);
+                        }
+                    }
+                    while (visitedIn.hasNext()) visitedOut.write(visitedIn.next());
+                    visitedCount = visitedOut.getCount();
+                    layerCount = layerOut.getCount();
+                    this.bytesWritten += visitedOut.getBytes() + layerOut.getBytes();
+                }
+                transitions.clear();
+                if (visited != null) delete(visited, files);
+                visited = nextVisited;
+
+                // expand the new layer
+                try (RecordReader layerIn = new FileReader(layer, width + 1, layerCount)) {
+                    while (layerIn.hasNext()) {
+                        System.arraycopy(layerIn.next(), 0, curr, 0, width + 1);
+                        long source = curr[width];
+                        level.expand(curr, succ, (label, slots, base) -> transitions.add(slots, base, (source << 32) | label));
+                    }
+                }
+                delete(layer, files);
+                ++layers;
+            }
+            if (visited != null) delete(visited, files);
+
+            if (verbose) System.out.println(String.format("external BFS: %d layers, %d sorted runs, %d bytes written",
+                    layers, this.runs, this.bytesWritten));
+            product.setStateCount(stateCount);
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("External BFS failed: " + ioex.getMessage(), ioex);
+        } finally {
+            for (Path file: new ArrayList<>(files)) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // a leftover temporary file
+                }
+            }
+        }
+    }
+
+    private Path newFile(ArrayList<Path> files) throws IOException {
+        Path file = this.dir == null ? Files.createTempFile("gsq-bfs", ".bin") : Files.createTempFile(this.dir, "gsq-bfs", ".bin");
+        files.add(file);
+        return file;
+    }
+
+    private static void delete(Path file, ArrayList<Path> files) throws IOException {
+        Files.deleteIfExists(file);
+        files.remove(file);
+    }
+
+    /**
+     * Compares the first width longs of the records.
+     */
+    private static int compare(long[] a, long[] b, int width) {
+        return compare(a, 0, b, 0, width);
+    }
+
+    private static int compare(long[] a, int aBase, long[] b, int bBase, int width) {
+        for (int i = 0; i < width; ++i) {
+            int result = Long.compare(a[aBase + i], b[bBase + i]);
+            if (result != 0) return result;
+        }
+        return 0;
+    }
+
+    /**
+     * A stream of records of a fixed number of longs, in order. The array returned by peek and next is overwritten by
+     * the following call of next.
+     */
+    private interface RecordReader extends AutoCloseable {
+
+        boolean hasNext();
+
+        long[] peek();
+
+        long[] next();
+
+        @Override
+        void close() throws IOException;
+
+    }
+
+    private static class FileReader implements RecordReader {
+
+        private final DataInputStream in;
+        private final long[] record;
+        private long remaining;
+        private boolean loaded;
+
+        FileReader(Path file, int recordLongs, long count) throws IOException {
+            this.in = file == null ? null : new DataInputStream(new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_SIZE));
+            this.record = new long[recordLongs];
+            this.remaining = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.loaded || this.remaining > 0;
+        }
+
+        @Override
+        public long[] peek() {
+            if (!this.loaded) {
+                try {
+                    for (int i = 0; i < this.record.length; ++i) this.record[i] = this.in.readLong();
+                } catch (IOException ioex) {
+                    throw new UncheckedIOException(ioex);
+                }
+                --this.remaining;
+                this.loaded = true;
+            }
+            return this.record;
+        }
+
+        @Override
+        public long[] next() {
+            long[] record = this.peek();
+            this.loaded = false;
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.in != null) this.in.close();
+        }
+
+    }
+
+    private static class RecordWriter implements AutoCloseable {
+
+        private final DataOutputStream out;
+        private final int recordLongs;
+        private long count;
+
+        RecordWriter(Path file, int recordLongs) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE));
+            this.recordLongs = recordLongs;
+        }
+
+        void write(long[] record) throws IOException {
+            for (int i = 0; i < this.recordLongs; ++i) this.out.writeLong(record[i]);
+            ++this.count;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+
+        long getBytes() {
+            return 8L * this.recordLongs * this.count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+
+    }
+
+    /**
+     * Collects (state, payload) records, sorted by state: a buffer that is sorted and written to a run file when full,
+     * and read back as the merge of the runs and the buffer. The buffer grows up to its capacity and is reused after
+     * clear.
+     */
+    private class RunSorter {
+
+        private final int width;
+        private final int recordLongs;
+        private final ArrayList<Path> files;
+        private final ArrayList<Path> runFiles = new ArrayList<>();
+        private final ArrayList<Long> runCounts = new ArrayList<>();
+        private long[] buffer;
+        private final int capacity;
+        private int buffered;
+        private long size;
+
+        RunSorter(int width, long bufferBytes, ArrayList<Path> files) {
+            this.width = width;
+            this.recordLongs = width + 1;
+            this.files = files;
+            this.capacity = (int) Math.max(64, Math.min(Integer.MAX_VALUE / 2 / this.recordLongs, bufferBytes / (8L * this.recordLongs + 8)));
+            this.buffer = new long[Math.min(this.capacity, 1024) * this.recordLongs];
+        }
+
+        long size() {
+            return this.size;
+        }
+
+        void add(long[] slots, int base, long payload) {
+            if (this.buffered * this.recordLongs == this.buffer.length && this.buffered < this.capacity)
+                this.buffer = Arrays.copyOf(this.buffer, Math.min(this.capacity, 2 * this.buffered) * this.recordLongs);
+            if (this.buffered == this.capacity) {
+                try {
+                    this.spill();
+                } catch (IOException ioex) {
+                    throw new UncheckedIOException("Cannot write a sorted run: " + ioex.getMessage(), ioex);
+                }
+            }
+            int pos = this.buffered++ * this.recordLongs;
+            System.arraycopy(slots, base, this.buffer, pos, this.width);
+            this.buffer[pos + this.width] = payload;
+            ++this.size;
+        }
+
+        private int[] sortBuffer() {
+            int[] order = new int[this.buffered];
+            for (int i = 0; i < order.length; ++i) order[i] = i;
+            this.mergeSort(order, new int[order.length], 0, order.length);
+            return order;
+        }
+
+        private void mergeSort(int[] order, int[] tmp, int from, int to) {
+            if (to - from < 2) return;
+            int mid = (from + to) >>> 1;
+            this.mergeSort(order, tmp, from, mid);
+            this.mergeSort(order, tmp, mid, to);
+            if (this.compareBuffered(order[mid - 1], order[mid]) <= 0) return;
+            System.arraycopy(order, from, tmp, from, to - from);
+            int left = from;
+            int right = mid;
+            for (int i = from; i < to; ++i) {
+                if (right == to || (left < mid && this.compareBuffered(tmp[left], tmp[right]) <= 0)) order[i] = tmp[left++];
+                else order[i] = tmp[right++];
+            }
+        }
+
+        private int compareBuffered(int a, int b) {
+            return compare(this.buffer, a * this.recordLongs, this.buffer, b * this.recordLongs, this.width);
+        }
+
+        private void spill() throws IOException {
+            int[] order = this.sortBuffer();
+            Path file = ExternalExplorer.this.newFile(this.files);
+            long[] record = new long[this.recordLongs];
+            try (RecordWriter out = new RecordWriter(file, this.recordLongs)) {
+                for (int i: order) {
+                    System.arraycopy(this.buffer, i * this.recordLongs, record, 0, this.recordLongs);
+                    out.write(record);
+                }
+                ExternalExplorer.this.bytesWritten += out.getBytes();
+            }
+            this.runFiles.add(file);
+            this.runCounts.add((long) this.buffered);
+            this.buffered = 0;
+            ++ExternalExplorer.this.runs;
+        }
+
+        /**
+         * Returns the records merged in the order of states.
+         */
+        RecordReader sorted() throws IOException {
+            ArrayList<RecordReader> readers = new ArrayList<>();
+            for (int i = 0; i < this.runFiles.size(); ++i)
+                readers.add(new FileReader(this.runFiles.get(i), this.recordLongs, this.runCounts.get(i)));
+            readers.add(new BufferReader(this.sortBuffer()));
+            return readers.size() == 1 ? readers.get(0) : new MergeReader(readers, this.width);
+        }
+
+        /**
+         * Forgets the records, deleting the runs.
+         */
+        void clear() throws IOException {
+            for (Path file: this.runFiles) ExternalExplorer.delete(file, this.files);
+            this.runFiles.clear();
+            this.runCounts.clear();
+            this.buffered = 0;
+            this.size = 0;
+        }
+
+        private class BufferReader implements RecordReader {
+
+            private final int[] order;
+            private final long[] record = new long[RunSorter.this.recordLongs];
+            private int next;
+
+            BufferReader(int[] order) {
+                this.order = order;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next < this.order.length;
+            }
+
+            @Override
+            public long[] peek() {
+                System.arraycopy(RunSorter.this.buffer, this.order[this.next] * RunSorter.this.recordLongs, this.record, 0, this.record.length);
+                return this.record;
+            }
+
+            @Override
+            public long[] next() {
+                this.peek();
+                ++this.next;
+                return this.record;
+            }
+
+            @Override
+            public void close() {
+            }
+
+        }
+
+    }
+
+    /**
+     * The k-way merge of sorted readers by a binary heap of the readers ordered by their next records.
+     */
+    private static class MergeReader implements RecordReader {
+
+        private final ArrayList<RecordReader> readers;
+        private final RecordReader[] heap;
+        private final int width;
+        private final long[] record;
+        private int size;
+
+        MergeReader(ArrayList<RecordReader> readers, int width) {
+            this.readers = readers;
+            this.heap = new RecordReader[readers.size()];
+            this.width = width;
+            this.record = new long[width + 1];
+            for (RecordReader reader: readers) {
+                if (!reader.hasNext()) continue;
+                this.heap[this.size] = reader;
+                this.siftUp(this.size++);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.size > 0;
+        }
+
+        @Override
+        public long[] peek() {
+            return this.heap[0].peek();
+        }
+
+        @Override
+        public long[] next() {
+            System.arraycopy(this.heap[0].next(), 0, this.record, 0, this.record.length);
+            if (this.heap[0].hasNext()) {
+                this.siftDown(0);
+            } else {
+                this.heap[0] = this.heap[--this.size];
+                this.heap[this.size] = null;
+                if (this.size > 0) this.siftDown(0);
+            }
+            return this.record;
+        }
+
+        private boolean less(int a, int b) {
+            return compare(this.heap[a].peek(), this.heap[b].peek(), this.width) < 0;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0 && this.less(i, (i - 1) / 2)) {
+                this.swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int least = i;
+                if (2 * i + 1 < this.size && this.less(2 * i + 1, least)) least = 2 * i + 1;
+                if (2 * i + 2 < this.size && this.less(2 * i + 2, least)) least = 2 * i + 2;
+                if (least == i) return;
+                this.swap(i, least);
+                i = least;
+            }
+        }
+
+        private void swap(int a, int b) {
+            RecordReader reader = this.heap[a];
+            this.heap[a] = this.heap[b];
+            this.heap[b] = reader;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RecordReader reader: this.readers) reader.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,340 @@
+package gsprod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The breadth-first frontier search: only the states of the last closed BFS layers, the current one and the next one
+ * are kept in memory, so the memory is proportional to the width of the BFS instead of the size of the product. The
+ * states are numbered in the order of discovery, as by SequentialExplorer, and the product is exact.
+ * <p>
+ * A successor found in none of the kept layers is new unless it is in a forgotten layer, which is ruled out by a lower
+ * bound on its layer. The structure of the product gives one: a transition moves the root by at most one transition and
+ * at most one child by at most one transition, so a state is at least as deep as the distance of its root from the
+ * initial state of the root, and as the sum of the distances of the children (the active one at its active state, the
+ * others at their memory). The successors of the successor give another one: if it has a path of length l to a kept
+ * state of layer m, it is in a layer of at least m - l; the paths of length up to layers + 1 are searched. If neither
+ * bound proves the successor new, the transitions may go back further than the kept layers and the search falls back to
+ * a full store: the forgotten layers, which were written to a file as they were dropped, are read back into the
+ * StateStore of the settings with the kept ones, and the BFS goes on from the state being expanded like
+ * SequentialExplorer.
+ */
+public class FrontierExplorer implements ProductExplorer {
+
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final ProductSettings settings;
+    private final int layers;
+
+    /**
+     * Makes a search keeping the given number of closed layers besides the current and the next one.
+     */
+    public FrontierExplorer(ProductSettings settings, int layers) {
+        if (layers < 1) throw new RuntimeException("The frontier search must keep at least one closed layer.");
+        this.settings = settings;
+        this.layers = layers;
+    }
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        int width = level.getWidth();
+        long[] curr = new long[width];
+        long[] succ = new long[width];
+
+        // state i + 1 of the product is state i of the layers
+        Window window = new Window(width);
+        for (int i = 0; i < level.getInitialCount(); ++i) {
+            level.encodeInitial(i, succ, 0);
+            product.addTransition(0, level.getEpsilon(), window.next.add(succ, 0) + 1);
+        }
+
+        Path forgotten = null;
+        DataOutputStream forgottenOut = null;
+        int forgottenCount = 0;
+        ProductBuilder transitions = new ProductBuilder();
+        boolean[] boundHolds = { true };
+        DepthBound depthBound = new DepthBound(level);
+        BackwardSearch backward = new BackwardSearch(level, window, this.layers);
+        int layerCount = 0;
+        long maxKept = 0;
+        try {
+            while (window.next.size() > 0) {
+                window.advance();
+                ++layerCount;
+
+                if (window.kept.size() > this.layers + 1) {
+                    HeapStateStore dropped = window.dropOldest();
+                    if (forgottenOut == null) {
+                        forgotten = this.settings.getExternalDir() == null ? Files.createTempFile("gsq-frontier", ".bin")
+                                : Files.createTempFile(this.settings.getExternalDir(), "gsq-frontier", ".bin");
+                        forgottenOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(forgotten), IO_BUFFER_SIZE));
+                    }
+                    for (int id = 0; id < dropped.size(); ++id) {
+                        dropped.get(id, curr, 0);
+                        for (int i = 0; i < width; ++i) forgottenOut.writeLong(curr[i]);
+                    }
+                    forgottenCount += dropped.size();
+                }
+
+                HeapStateStore current = window.kept.peekLast();
+                int currentBase = window.bases.peekLast();
+                for (int id = 0; id < current.size(); ++id) {
+                    current.get(id, curr, 0);
+                    int source = currentBase + id + 1;
+                    level.expand(curr, succ, (label, slots, base) -> {
+                        if (!boundHolds[0]) return;
+                        int target = window.find(slots, base);
+                        if (target < 0) {
+                            if (window.forgottenLayers > 0 && depthBound.getMinLayer(slots, base) <= window.forgottenLayers
+                                    && !backward.provesNew(slots, base)) {
+                                boundHolds[0] = false;
+                                return;
+                            }
+                            target = window.nextBase + window.next.add(slots, base);
+                        }
+                        transitions.addTransition(source, label, target + 1);
+                    });
+
+                    // the transitions of the state found so far are dropped, it is expanded again with the full store
+                    if (!boundHolds[0]) {
+                        if (verbose) System.out.println(String.format("frontier search: a transition may go back more than %d layers " +
+                                "at layer %d, falling back to a full store", this.layers, layerCount));
+                        if (forgottenOut != null) forgottenOut.close();
+                        forgottenOut = null;
+                        StateStore visited = this.settings.newStateStore(width, level.getFieldStarts(), level.getHeadFieldCount());
+                        if (forgotten != null) readForgotten(forgotten, forgottenCount, visited, curr);
+                        for (HeapStateStore layer: window.kept) copy(layer, visited, curr);
+                        copy(window.next, visited, curr);
+                        exploreFrom(level, visited, source - 1, product, curr, succ);
+                        if (verbose) System.out.println("visited store: " + visited);
+                        product.setStateCount(visited.size() + 1);
+                        return;
+                    }
+                    transitions.drainTo(product);
+                }
+
+                long keptStates = window.next.size();
+                for (HeapStateStore layer: window.kept) keptStates += layer.size();
+                maxKept = Math.max(maxKept, keptStates);
+            }
+
+            if (verbose) System.out.println(String.format("frontier search: %d layers, at most %d of %d states kept",
+                    layerCount, maxKept, window.nextBase));
+            product.setStateCount(window.nextBase + 1);
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("Cannot write the forgotten layers: " + ioex.getMessage(), ioex);
+        } finally {
+            try {
+                if (forgottenOut != null) forgottenOut.close();
+                if (forgotten != null) Files.deleteIfExists(forgotten);
+            } catch (IOException ignored) {
+                // a leftover temporary file
+            }
+        }
+    }
+
+    private static void readForgotten(Path file, int count, StateStore visited, long[] buffer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_SIZE))) {
+            for (int id = 0; id < count; ++id) {
+                for (int i = 0; i < buffer.length; ++i) buffer[i] = in.readLong();
+                visited.add(buffer, 0);
+            }
+        }
+    }
+
+    private static void copy(HeapStateStore layer, StateStore visited, long[] buffer) {
+        for (int id = 0; id < layer.size(); ++id) {
+            layer.get(id, buffer, 0);
+            visited.add(buffer, 0);
+        }
+    }
+
+    /**
+     * Goes on with the BFS of SequentialExplorer from the state with the given id of the full store.
+     */
+    private static void exploreFrom(ProductLevel level, StateStore visited, int firstId, ProductSink product, long[] curr, long[] succ) {
+        for (int currId = firstId; currId < visited.size(); ++currId) {
+            visited.get(currId, curr, 0);
+            int source = currId + 1;
+            level.expand(curr, succ, (label, slots, base) -> product.addTransition(source, label, visited.add(slots, base) + 1));
+        }
+    }
+
+    /**
+     * The kept layers, the oldest first and the current one last, with the numbers of their first states, and the next
+     * layer.
+     */
+    private static class Window {
+
+        private final int width;
+        private final ArrayDeque<HeapStateStore> kept = new ArrayDeque<>();
+        private final ArrayDeque<Integer> bases = new ArrayDeque<>();
+        private HeapStateStore next;
+        private int nextBase;
+        private int forgottenLayers;
+
+        Window(int width) {
+            this.width = width;
+            this.next = new HeapStateStore(width);
+        }
+
+        /**
+         * Makes the next layer the current one.
+         */
+        void advance() {
+            this.kept.addLast(this.next);
+            this.bases.addLast(this.nextBase);
+            this.nextBase += this.next.size();
+            this.next = new HeapStateStore(this.width);
+        }
+
+        HeapStateStore dropOldest() {
+            ++this.forgottenLayers;
+            this.bases.removeFirst();
+            return this.kept.removeFirst();
+        }
+
+        /**
+         * Returns the number of the state minus 1, or -1 if it is in none of the layers.
+         */
+        int find(long[] slots, int base) {
+            int id = this.next.indexOf(slots, base);
+            if (id >= 0) return this.nextBase + id;
+            Iterator<Integer> bases = this.bases.descendingIterator();
+            for (Iterator<HeapStateStore> layers = this.kept.descendingIterator(); layers.hasNext(); ) {
+                HeapStateStore layer = layers.next();
+                int layerBase = bases.next();
+                id = layer.indexOf(slots, base);
+                if (id >= 0) return layerBase + id;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the layer of the state relative to the current one: 1 for the next one, 0 for the current one, -1
+         * for the one before it, ..., or Integer.MIN_VALUE if it is in none of the layers.
+         */
+        int layerOf(long[] slots, int base) {
+            if (this.next.indexOf(slots, base) >= 0) return 1;
+            int layer = 0;
+            for (Iterator<HeapStateStore> layers = this.kept.descendingIterator(); layers.hasNext(); --layer)
+                if (layers.next().indexOf(slots, base) >= 0) return layer;
+            return Integer.MIN_VALUE;
+        }
+
+    }
+
+    /**
+     * The lower bound on the BFS layer of a state by the distances of its components from their initial states. The
+     * children produced while they are explored (PipedAutomaton) are not counted.
+     */
+    private static class DepthBound {
+
+        private final GSQStateCodec codec;
+        private final int[] rootDistances;
+        private final int[][] childDistances;
+
+        DepthBound(ProductLevel level) {
+            this.codec = level.getCodec();
+            this.rootDistances = distances(level.getRoot());
+            this.childDistances = new int[level.getChildren().length][];
+            for (int i = 0; i < this.childDistances.length; ++i)
+                if (!(level.getChildren()[i] instanceof PipedAutomaton)) this.childDistances[i] = distances(level.getChildren()[i]);
+        }
+
+        /**
+         * Returns the BFS distances of the states from the initial state.
+         */
+        private static int[] distances(CompiledAutomaton automaton) {
+            int[] distances = new int[automaton.getStateCount()];
+            Arrays.fill(distances, -1);
+            int[] queue = new int[distances.length];
+            int size = 0;
+            distances[automaton.getInitial()] = 0;
+            queue[size++] = automaton.getInitial();
+            for (int head = 0; head < size; ++head) {
+                int state = queue[head];
+                for (int trans = automaton.firstTransition(state); trans < automaton.lastTransition(state); ++trans) {
+                    int target = automaton.getTarget(trans);
+                    if (distances[target] >= 0) continue;
+                    distances[target] = distances[state] + 1;
+                    queue[size++] = target;
+                }
+            }
+            return distances;
+        }
+
+        /**
+         * Returns a lower bound on the layer of the state, the initial states being in layer 1.
+         */
+        int getMinLayer(long[] slots, int base) {
+            int active = this.codec.getActiveChild(slots, base);
+            int childMoves = 0;
+            for (int i = 0; i < this.childDistances.length; ++i) {
+                if (this.childDistances[i] == null) continue;
+                int state = i == active ? this.codec.getActiveChildState(slots, base) : this.codec.getChildMemory(slots, base, i);
+                childMoves += this.childDistances[i][state];
+            }
+            return 1 + Math.max(this.rootDistances[this.codec.getRootState(slots, base)], childMoves);
+        }
+
+    }
+
+    /**
+     * The depth-first search of the short paths from a state to the kept states.
+     */
+    private static class BackwardSearch {
+
+        private final ProductLevel level;
+        private final Window window;
+        private final int layers;
+        private final long[][] states;
+        private final long[][] succs;
+        private boolean proved;
+
+        BackwardSearch(ProductLevel level, Window window, int layers) {
+            this.level = level;
+            this.window = window;
+            this.layers = layers;
+            this.states = new long[layers + 1][level.getWidth()];
+            this.succs = new long[layers + 1][level.getWidth()];
+        }
+
+        /**
+         * Returns true if the state in slots at [base, base + width), which is in none of the kept layers, has a
+         * path of length l to a kept state of layer m with m - l >= -layers, so it is not in a forgotten layer (if
+         * all the layers are kept, any state is).
+         */
+        boolean provesNew(long[] slots, int base) {
+            this.proved = false;
+            System.arraycopy(slots, base, this.states[0], 0, this.states[0].length);
+            this.search(0);
+            return this.proved;
+        }
+
+        private void search(int depth) {
+            int length = depth + 1;
+            this.level.expand(this.states[depth], this.succs[depth], (label, slots, base) -> {
+                if (this.proved) return;
+                int layer = this.window.layerOf(slots, base);
+                if (layer != Integer.MIN_VALUE && layer - length >= -this.layers) {
+                    this.proved = true;
+                } else if (length < this.layers + 1) {
+                    System.arraycopy(slots, base, this.states[length], 0, this.states[length].length);
+                    this.search(length);
+                }
+            });
+        }
+
+    }
+
+}
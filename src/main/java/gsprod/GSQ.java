@@ -1,5 +1,7 @@
 package gsprod;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.concurrent.Callable;
 
@@ -40,6 +42,122 @@ public class GSQ implements Callable<Integer> {
             description = "Dump: save randomly generated net to files.")
     String dumpFname;
 
+    @Option(names = {"-e", "--engine"}, arity = "1", paramLabel = "engine",
+            description = "The exploration engine of the product: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    ProductSettings.Engine engine = ProductSettings.Engine.SEQUENTIAL;
+
+    @Option(names = {"-t", "--threads"}, arity = "1", paramLabel = "threads",
+            description = "The number of threads of the parallel and stealing engines (default: the number of processors); " +
+            "the sharded engine runs a thread per child of the root of each level.")
+    Integer threads;
+
+    @Option(names = "--subtree-threads", arity = "1", paramLabel = "threads",
+            description = "The number of independent subtrees of the net reduced in parallel (default: ${DEFAULT-VALUE}).")
+    int subtreeThreads = 1;
+
+    @Option(names = "--table-size", arity = "1", paramLabel = "log2",
+            description = "The concurrent state table of the stealing engine has 2^log2 buckets, " +
+            "3/4 of which can hold states (default: ${DEFAULT-VALUE}).")
+    int log2TableSize = 24;
+
+    @Option(names = "--external-buffer", arity = "1", paramLabel = "bytes",
+            description = "The bytes of transitions the external engine sorts in memory before writing a sorted run to disk " +
+            "(suffixes k, m, g allowed, default: 64m).")
+    String externalBuffer;
+
+    @Option(names = "--external-dir", arity = "1", paramLabel = "dir",
+            description = "The directory of the files of the external engine and of the layers forgotten by the frontier " +
+            "engine (default: the temporary directory).")
+    String externalDir;
+
+    @Option(names = "--frontier-layers", arity = "1", paramLabel = "k",
+            description = "The number of closed BFS layers the frontier engine keeps besides the current and the next one; " +
+            "if a transition may go back further, it falls back to a full store (default: 1).")
+    Integer frontierLayers;
+
+    @Option(names = "--off-heap", arity = "1", paramLabel = "bytes",
+            description = "Keep the visited product states off the Java heap, in at most the given number of bytes " +
+            "(suffixes k, m, g, t allowed, works only with the sequential engine and one subtree thread). " +
+            "Direct memory is limited by -XX:MaxDirectMemorySize, see --off-heap-dir.")
+    String offHeapBudget;
+
+    @Option(names = "--off-heap-dir", arity = "1", paramLabel = "dir",
+            description = "Back the off-heap states by a memory-mapped temporary file in dir (works only with --off-heap).")
+    String offHeapDir;
+
+    @Option(names = "--tree-compression",
+            description = "Keep the visited product states tree-compressed: the parts that states have in common are stored " +
+            "once (works only with the sequential engine, not with --off-heap).")
+    boolean treeCompression;
+
+    @Option(names = "--pipeline",
+            description = "Explore all the levels of the composition tree at the same time, every level reading the products " +
+            "of its children while they are produced (one thread per inner node, not with --subtree-threads or --heap-budget).")
+    boolean pipelined;
+
+    @Option(names = "--lazy",
+            description = "Don't build the intermediate products: explore the product of the whole tree at once, computing " +
+            "the successors of the subtrees on demand (sequential engine only, not with --pipeline, --subtree-threads " +
+            "or --heap-budget). Deciding whether a synchronizing label of a root is reachable in a subtree may still " +
+            "store the reachable states of the subtree's product, until the labels of the subtree are decided.")
+    boolean lazy;
+
+    @Option(names = "--shared-memory",
+            description = "Store every distinct memory unit of the product states of a level once and refer to it from " +
+            "the states, instead of storing it in every state (not with --lazy, the external and frontier engines, --bitstate, " +
+            "--hash-compaction, --state-cache and --off-heap). Without it, only the levels with at least " +
+            MemoryTable.SPARSE_BRANCHING + " children whose states get narrower do so, keeping the children that left their initial states; " +
+            "only the sequential engine does this, without --bitstate, --hash-compaction, --state-cache and --off-heap.")
+    boolean sharedMemory;
+
+    @Option(names = "--stats-only",
+            description = "Don't build the product automaton: only count the states, transitions, transitions per label " +
+            "and out-degrees of the topmost product while it is explored.")
+    boolean statsOnly;
+
+    @Option(names = "--export", arity = "1", paramLabel = "file",
+            description = "Write the product to the file while it is explored, without building it: in the Aldebaran " +
+            "format if the name ends with .aut, otherwise in the format of the dumped models.")
+    String exportFile;
+
+    @Option(names = "--state-cache", arity = "1", paramLabel = "bytes",
+            description = "Explore the topmost product depth-first with a cache of visited states of about the given number " +
+            "of bytes (suffixes k, m, g allowed) instead of keeping all of them: when it is full, a state is forgotten and " +
+            "explored again if it is reached again, which is reported as overhead. The evicted states that are not " +
+            "recognized are counted again, so after an eviction the counts are upper bounds (works only with --stats-only " +
+            "and the sequential engine, not with --export, --lazy, --off-heap, --tree-compression, --bitstate and --hash-compaction).")
+    String stateCacheBytes;
+
+    @Option(names = "--cache-policy", arity = "1", paramLabel = "policy",
+            description = "The state forgotten by the full --state-cache: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    StateCache.Policy cachePolicy = StateCache.Policy.LRU;
+
+    @Option(names = "--bitstate", arity = "1", paramLabel = "bytes",
+            description = "Explore the topmost product with bitstate hashing: a state is marked visited by setting " +
+            "--bitstate-hashes bits of an array of the given number of bytes (suffixes k, m, g allowed), so states may " +
+            "be missed; the expected number of missed states is reported (works only with --stats-only).")
+    String bitstateBytes;
+
+    @Option(names = "--bitstate-hashes", arity = "1", paramLabel = "k",
+            description = "The number of bits set per state by --bitstate (default: ${DEFAULT-VALUE}).")
+    int bitstateHashes = 3;
+
+    @Option(names = "--hash-compaction", arity = "1", paramLabel = "bytes",
+            description = "Explore the topmost product with hash compaction: only a 64-bit fingerprint of each visited " +
+            "state is kept, in a table of the given number of bytes (suffixes k, m, g allowed), so states may be missed; " +
+            "the expected number of missed states is reported (works only with --stats-only, not with --bitstate).")
+    String hashCompactionBytes;
+
+    @Option(names = "--heap-budget", arity = "1", paramLabel = "bytes",
+            description = "Keep the intermediate products of the composition tree within the given number of bytes " +
+            "(suffixes k, m, g, t allowed): the largest products waiting for their siblings are spilled to disk " +
+            "and parallel subtree reductions wait for room.")
+    String heapBudget;
+
+    @Option(names = "--spill-dir", arity = "1", paramLabel = "dir",
+            description = "The directory of the spilled products (default: the temporary directory, works only with --heap-budget).")
+    String spillDir;
+
     @Spec CommandSpec spec;
 
     public Integer call() throws Exception {
@@ -48,6 +166,109 @@ public class GSQ implements Callable<Integer> {
             throw new ParameterException(spec.commandLine(), "Please provide either input files or random experiment parameters.");
         }
 
+        ProductSettings settings = new ProductSettings();
+        settings.setEngine(engine);
+        if (log2TableSize < 4 || log2TableSize > 30) throw new ParameterException(spec.commandLine(), "The table size must be in [4, 30].");
+        settings.setLog2TableSize(log2TableSize);
+        if (threads != null) {
+            if (threads < 1) throw new ParameterException(spec.commandLine(), "The number of threads must be positive.");
+            settings.setThreads(threads);
+        }
+        if (subtreeThreads < 1) throw new ParameterException(spec.commandLine(), "The number of subtree threads must be positive.");
+        settings.setSubtreeThreads(subtreeThreads);
+        if (frontierLayers != null) {
+            if (engine != ProductSettings.Engine.FRONTIER)
+                throw new ParameterException(spec.commandLine(), "--frontier-layers works only with the frontier engine.");
+            if (frontierLayers < 1) throw new ParameterException(spec.commandLine(), "The number of frontier layers must be positive.");
+            settings.setFrontierLayers(frontierLayers);
+        }
+        if (externalBuffer != null || externalDir != null) {
+            if (engine != ProductSettings.Engine.EXTERNAL && (engine != ProductSettings.Engine.FRONTIER || externalBuffer != null))
+                throw new ParameterException(spec.commandLine(),
+                        "--external-buffer works only with the external engine, --external-dir with the external and frontier ones.");
+            try {
+                if (externalBuffer != null) settings.setExternalBufferBytes(ProductSettings.parseBytes(externalBuffer));
+            } catch (RuntimeException rtex) {
+                throw new ParameterException(spec.commandLine(), rtex.getMessage());
+            }
+            if (externalDir != null) settings.setExternalDir(Paths.get(externalDir));
+        }
+        if (offHeapBudget != null) {
+            if (engine != ProductSettings.Engine.SEQUENTIAL)
+                throw new ParameterException(spec.commandLine(), "Off-heap states work only with the sequential engine.");
+            if (subtreeThreads > 1)
+                throw new ParameterException(spec.commandLine(), "Off-heap states work only with one subtree thread.");
+            try {
+                settings.setOffHeapBudget(ProductSettings.parseBytes(offHeapBudget));
+            } catch (RuntimeException rtex) {
+                throw new ParameterException(spec.commandLine(), rtex.getMessage());
+            }
+            if (offHeapDir != null) settings.setOffHeapDir(Paths.get(offHeapDir));
+        }
+
+        if (treeCompression) {
+            if (engine != ProductSettings.Engine.SEQUENTIAL || offHeapBudget != null)
+                throw new ParameterException(spec.commandLine(), "Tree compression works only with the sequential engine, without --off-heap.");
+            settings.setTreeCompression(true);
+        }
+
+        if (pipelined) {
+            if (subtreeThreads > 1 || heapBudget != null)
+                throw new ParameterException(spec.commandLine(), "The pipeline works without --subtree-threads and --heap-budget.");
+            settings.setPipelined(true);
+        }
+        if (lazy) {
+            if (engine != ProductSettings.Engine.SEQUENTIAL || pipelined || subtreeThreads > 1 || heapBudget != null)
+                throw new ParameterException(spec.commandLine(),
+                        "The lazy product works only with the sequential engine, without --pipeline, --subtree-threads and --heap-budget.");
+            settings.setLazy(true);
+        }
+        if (sharedMemory) {
+            if (lazy) throw new ParameterException(spec.commandLine(), "The lazy product doesn't share memory units.");
+            if (engine == ProductSettings.Engine.EXTERNAL || engine == ProductSettings.Engine.FRONTIER
+                    || bitstateBytes != null || hashCompactionBytes != null || stateCacheBytes != null || offHeapBudget != null)
+                throw new ParameterException(spec.commandLine(), "The external and frontier engines, bitstate hashing, " +
+                        "hash compaction, the state cache and the off-heap store keep the memory units in the states, they " +
+                        "don't share them.");
+            settings.setSharedMemory(true);
+        }
+        if (stateCacheBytes != null) {
+            if (!statsOnly || exportFile != null)
+                throw new ParameterException(spec.commandLine(), "The state cache works only with --stats-only, without --export.");
+            if (engine != ProductSettings.Engine.SEQUENTIAL || lazy || offHeapBudget != null || treeCompression
+                    || bitstateBytes != null || hashCompactionBytes != null)
+                throw new ParameterException(spec.commandLine(), "The state cache works only with the sequential engine, " +
+                        "without --lazy, --off-heap, --tree-compression, --bitstate and --hash-compaction.");
+            try {
+                settings.setStateCacheBytes(ProductSettings.parseBytes(stateCacheBytes));
+            } catch (RuntimeException rtex) {
+                throw new ParameterException(spec.commandLine(), rtex.getMessage());
+            }
+            settings.setCachePolicy(cachePolicy);
+        }
+        if (bitstateBytes != null || hashCompactionBytes != null) {
+            if (!statsOnly || exportFile != null)
+                throw new ParameterException(spec.commandLine(), "Bitstate hashing and hash compaction work only with --stats-only, without --export.");
+            if (bitstateBytes != null && hashCompactionBytes != null)
+                throw new ParameterException(spec.commandLine(), "Please choose either bitstate hashing or hash compaction.");
+            if (bitstateHashes < 1) throw new ParameterException(spec.commandLine(), "The number of bitstate hashes must be positive.");
+            settings.setBitstateHashes(bitstateHashes);
+            try {
+                if (bitstateBytes != null) settings.setBitstateBytes(ProductSettings.parseBytes(bitstateBytes));
+                else settings.setHashCompactionBytes(ProductSettings.parseBytes(hashCompactionBytes));
+            } catch (RuntimeException rtex) {
+                throw new ParameterException(spec.commandLine(), rtex.getMessage());
+            }
+        }
+        if (heapBudget != null) {
+            try {
+                settings.setHeapBudget(ProductSettings.parseBytes(heapBudget));
+            } catch (RuntimeException rtex) {
+                throw new ParameterException(spec.commandLine(), rtex.getMessage());
+            }
+            if (spillDir != null) settings.setSpillDir(Paths.get(spillDir));
+        }
+
         AutomataNet nr = null;
 
         if (randomOptions != null) {
@@ -87,7 +308,31 @@ public class GSQ implements Callable<Integer> {
         }
 
         // run the reduction
-        Automaton product = GSQProduct.generalSquareProduct(nr, verbose);
+        if (statsOnly || exportFile != null) {
+            ProductStatistics stats = statsOnly ? new ProductStatistics() : null;
+            int stateCount;
+            long transitionCount;
+            if (exportFile == null) {
+                GSQProduct.generalSquareProduct(nr, settings, stats, verbose);
+                stateCount = stats.getStateCount();
+                transitionCount = stats.getTransitionCount();
+            } else {
+                Path exportPath = Paths.get(exportFile);
+                try (ProductWriter writer = new ProductWriter(exportPath, ProductWriter.formatOf(exportPath), nr.getActionTable())) {
+                    GSQProduct.generalSquareProduct(nr, settings, statsOnly ? ProductSink.both(stats, writer) : writer, verbose);
+                    stateCount = writer.getStateCount();
+                    transitionCount = writer.getTransitionCount();
+                }
+                if (verbose) System.out.println(">> The computed product is written to " + exportFile);
+            }
+
+            System.out.println("*** Product's stats: ***\n" + "states count: " + stateCount + "\ntransition count: " + transitionCount);
+            if (statsOnly) System.out.println(stats.toString(nr.getActionTable()));
+            System.out.println("*** Done. ***");
+            return 0;
+        }
+
+        Automaton product = GSQProduct.generalSquareProduct(nr, settings, verbose);
 
         if (verbose) {
             System.out.println(">> The computed product is " + product);
@@ -102,7 +347,7 @@ public class GSQ implements Callable<Integer> {
 
     public static void main(String[] args) {
         System.out.println("-=-=- gsprod.GSQ: General Square Product prototype (2021). -=-=-");
-        int exitCode = new CommandLine(new GSQ()).execute(args);
+        int exitCode = new CommandLine(new GSQ()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
         System.exit(exitCode);
    }
 
@@ -1,162 +1,294 @@
 package gsprod;
 
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 public class GSQProduct {
 
-    public static Automaton singleLevelProduct(Automaton root, ArrayList<Automaton> children, LinkedHashSet<String> syncActions, boolean verbose) {
-        if (verbose) {
-            System.out.print("reducing the subtree of " + root.getName() + " with children (statespace size, no of transitions): ");
-            for (Automaton child: children)
-                System.out.print("(" + child.getStates().size() + ", " + child.countTransitions()+  ") ");
-            System.out.println();
-        }
-        if (children == null) return root;
-
-        // this is the product automaton
-        Automaton product = new Automaton();
-
-        // make the dummy initial state
-        String init = "init";
-        product.addState(init);
-        product.setInitial(init);
-        product.markState(init);
-
-        // connect the dummy init with pairs of inits of root and each child
-        ArrayList<String> initMem = children.stream().map(Automaton::getInitial).collect(Collectors.toCollection(ArrayList::new));
-        ArrayList<GSQState> frontier = new ArrayList<>();
-
-        for (Automaton child: children) {
-            GSQState childInit = new GSQState(root, child, children, initMem);
-            product.addState(childInit.toString());
-            frontier.add(childInit);
-            product.markState(childInit.toString());
-            product.addTransition(init, "epsilon", childInit.toString());
-        }
-
-        // build the graph
-        while (!frontier.isEmpty()) {
-            GSQState currState = frontier.remove(0);
-            Automaton child = currState.getActiveChild();
-
-            // fire all the local actions of the child
-            ArrayList<Transition> enabledChildTransitions = child.getStateToTransitions().get(currState.getActiveChildState());
-            LinkedHashSet<String> localChildTransLabels = child.getLocalActions(syncActions, root);
-
-            for (Transition trans: enabledChildTransitions) {
-                if (localChildTransLabels.contains(trans.getLabel())) {
-                    GSQState childStepTarget = new GSQState(currState);
-                    childStepTarget.setActiveChildState(trans.getTarget());
+    public static Automaton singleLevelProduct(Automaton root, ArrayList<Automaton> children, ActionTable actions, boolean verbose) {
+        return singleLevelProduct(root, children, actions, new ProductSettings(), verbose);
+    }
 
-                    if (!product.isStateMarked(childStepTarget.toString())) {
-                        product.addState(childStepTarget.toString());
-                        frontier.add(childStepTarget);
-                        product.markState(childStepTarget.toString());
-                    }
+    public static Automaton singleLevelProduct(Automaton root, ArrayList<Automaton> children, ActionTable actions,
+                                               ProductSettings settings, boolean verbose) {
+        if (children == null) return root;
 
-                    product.addTransition(currState.toString(), trans.getLabel(), childStepTarget.toString());
+        // compile the operands and partition their labels
+        ProductLevel level = new ProductLevel(root, children, actions, settings.getMemoryLayout());
+        ProductBuilder product = new ProductBuilder();
+        exploreLevel(level, settings.newExplorer(), product, verbose);
+        return product.toAutomaton(actions, "sq" + root.getName());
+    }
 
-                }
+    private static void exploreLevel(ProductLevel level, ProductExplorer explorer, ProductSink product, boolean verbose) {
+        if (verbose) {
+            // one println, so that the lines of subtrees reduced in parallel don't mix
+            StringBuilder line = new StringBuilder("reducing the subtree of " + level.getRoot().getName() + " with children (statespace size, no of transitions): ");
+            for (CompiledAutomaton child: level.getChildren()) {
+                if (child instanceof PipedAutomaton) line.append("(piped) ");
+                else line.append("(").append(child.getStateCount()).append(", ").append(child.getTransitionCount()).append(") ");
             }
+            System.out.println(line);
+        }
 
-            // fire all the local actions of the root and synchronized ones
-            ArrayList<Transition> enabledRootTransitions = root.getStateToTransitions().get(currState.getRootState());
-            LinkedHashSet<String> localRootTransLabels = root.getLocalActions(syncActions, children);
-
-            for (Transition rootTrans: enabledRootTransitions) {
+        explorer.explore(level, product, verbose);
+        if (verbose && level.getCodec().getMemories() != null) System.out.println("memory table: " + level.getCodec().getMemories());
+    }
 
-                // local transitions of the root
-                if (localRootTransLabels.contains(rootTrans.getLabel())) {
+    /**
+     * Returns the subset of the children that share a common action with the root and are not equal to the root.
+     */
+    public static ArrayList<Automaton> discoverChildren(Automaton root, ArrayList<Automaton> children, ActionTable actions) {
+        ArrayList<Automaton> syncChildren = new ArrayList<>();
+        for (Automaton child: children)
+            if (child != root && !root.getSyncActions(actions.getSyncActions(), child).isEmpty()) syncChildren.add(child);
 
-                    GSQState rootStepTarget = new GSQState(currState);
-                    rootStepTarget.setRootState(rootTrans.getTarget());
+        return syncChildren;
+    }
 
-                    if (!product.isStateMarked(rootStepTarget.toString())) {
-                        product.addState(rootStepTarget.toString());
-                        frontier.add(rootStepTarget);
-                        product.markState(rootStepTarget.toString());
-                    }
+    /**
+     * Computes general square product. Note - it's up to you to ensure that the structure of the automata net is tree-like.
+     * If there are cycles, then this will loop into infinity. It is also assumed that the root is not present in children.
+     */
+    public static Automaton generalSquareProduct(Automaton root, ArrayList<Automaton> children, ActionTable actions, boolean verbose) {
+        return generalSquareProduct(root, children, actions, new ProductSettings(), verbose);
+    }
 
-                    product.addTransition(currState.toString(), rootTrans.getLabel(), rootStepTarget.toString());
+    /**
+     * Computes general square product; the independent subtrees are reduced in parallel if the settings allow more
+     * than one subtree thread. The intermediate products are kept by a CompositionScheduler within the heap budget of
+     * the settings.
+     */
+    public static Automaton generalSquareProduct(Automaton root, ArrayList<Automaton> children, ActionTable actions,
+                                                 ProductSettings settings, boolean verbose) {
+        if (GSQProduct.discoverChildren(root, children, actions).isEmpty()) return root;
+        if (settings.isApproximate()) throw new RuntimeException("An approximate exploration doesn't build the product.");
+
+        ProductBuilder product = new ProductBuilder();
+        generalSquareProduct(root, children, actions, settings, product, verbose);
+        Automaton automaton = product.toAutomaton(actions, "sq" + root.getName());
+        automaton.remapStates();
+        return automaton;
+    }
 
-                } else { // synchronized transitions
-                    for (Transition childTrans: enabledChildTransitions) { // do not optimize
-                        if (childTrans.getLabel().equals(rootTrans.getLabel())) {
-                            GSQState jointStepTargetTemplate = new GSQState(currState);
+    /**
+     * Computes general square product into the sink, which gets only the states and transitions of the topmost product:
+     * its Automaton is never built. If the root has no sync children, the sink gets the root, its initial state being 0.
+     */
+    public static void generalSquareProduct(Automaton root, ArrayList<Automaton> children, ActionTable actions,
+                                            ProductSettings settings, ProductSink sink, boolean verbose) {
+        if (GSQProduct.discoverChildren(root, children, actions).isEmpty()) {
+            emitAutomaton(root, actions, sink);
+            return;
+        }
+        if (settings.isPipelined()) {
+            pipelinedProduct(root, children, actions, settings, sink, verbose);
+            return;
+        }
+        if (settings.isLazy()) {
+            lazyProduct(root, children, actions, settings, sink, verbose);
+            return;
+        }
 
-                            // update root and memory (this is common for all targets of the joint action)
-                            jointStepTargetTemplate.setRootState(rootTrans.getTarget());
-                            jointStepTargetTemplate.updateChildMemory(jointStepTargetTemplate.getActiveChild(), childTrans.getTarget());
+        CompositionScheduler scheduler = new CompositionScheduler(actions, settings.getHeapBudget(), settings.getSpillDir());
+        SubtreeReduction reduction = new SubtreeReduction(root, children, actions, settings, scheduler, sink, verbose);
+        if (settings.getSubtreeThreads() <= 1) {
+            reduction.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(settings.getSubtreeThreads());
+            try {
+                pool.invoke(reduction);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        if (verbose && scheduler.isLimited()) System.out.println("composition scheduler: " + scheduler);
+    }
 
-                            // wake up a child from memory and register transition
-                            for (Automaton nextChild: jointStepTargetTemplate.getChildren()) {
-                                GSQState jointStepTarget = new GSQState(jointStepTargetTemplate);
-                                String savedState = jointStepTarget.getChildMemory(nextChild);
-                                jointStepTarget.setActiveChild(nextChild);
-                                jointStepTarget.setActiveChildState(savedState);
+    public static Automaton generalSquareProduct(AutomataNet net, boolean verbose) {
+        return generalSquareProduct(net, new ProductSettings(), verbose);
+    }
 
-                                if (!product.isStateMarked(jointStepTarget.toString())) {
-                                    product.addState(jointStepTarget.toString());
-                                    frontier.add(jointStepTarget);
-                                    product.markState(jointStepTarget.toString());
-                                }
+    public static Automaton generalSquareProduct(AutomataNet net, ProductSettings settings, boolean verbose) {
+        Automaton root = net.getAutomata().get(0);
+        ArrayList<Automaton> children = new ArrayList<>();
+        for (int i = 1; i < net.getAutomata().size(); ++i) children.add(net.getAutomata().get(i));
 
-                                product.addTransition(currState.toString(), rootTrans.getLabel(), jointStepTarget.toString());
+        return generalSquareProduct(root, children, net.getActionTable(), settings, verbose);
+    }
 
-                            }
+    public static void generalSquareProduct(AutomataNet net, ProductSettings settings, ProductSink sink, boolean verbose) {
+        Automaton root = net.getAutomata().get(0);
+        ArrayList<Automaton> children = new ArrayList<>();
+        for (int i = 1; i < net.getAutomata().size(); ++i) children.add(net.getAutomata().get(i));
 
-                        }
-                    }
-                }
+        generalSquareProduct(root, children, net.getActionTable(), settings, sink, verbose);
+    }
 
+    /**
+     * Passes the transitions of the automaton to the sink, with the initial state swapped with state 0.
+     */
+    private static void emitAutomaton(Automaton automaton, ActionTable actions, ProductSink sink) {
+        CompiledAutomaton compiled = CompiledAutomaton.compile(automaton, actions);
+        int initial = compiled.getStateId(automaton.getInitial());
+        for (int state = 0; state < compiled.getStateCount(); ++state) {
+            int source = state == initial ? 0 : state == 0 ? initial : state;
+            for (int trans = compiled.firstTransition(state); trans < compiled.lastTransition(state); ++trans) {
+                int target = compiled.getTarget(trans);
+                sink.addTransition(source, compiled.getLabel(trans), target == initial ? 0 : target == 0 ? initial : target);
             }
+        }
+        sink.setStateCount(compiled.getStateCount());
+    }
 
+    /**
+     * Computes general square product with the levels of the tree explored at the same time: every level below the
+     * top one is a PipedAutomaton produced by its own thread, and its parent explores the states as they are produced.
+     * The top level is explored by the engine of the settings.
+     */
+    private static void pipelinedProduct(Automaton root, ArrayList<Automaton> children, ActionTable actions,
+                                         ProductSettings settings, ProductSink sink, boolean verbose) {
+        ArrayList<Automaton> syncChildren = GSQProduct.discoverChildren(root, children, actions);
+
+        ArrayList<PipedAutomaton> pipes = new ArrayList<>();
+        CompiledAutomaton[] operands = new CompiledAutomaton[syncChildren.size()];
+        for (int i = 0; i < operands.length; ++i)
+            operands[i] = pipeSubtree(syncChildren.get(i), otherChildren(children, syncChildren.get(i)), actions, settings, pipes);
+        ProductLevel level = new ProductLevel(CompiledAutomaton.compile(root, actions), operands, actions, settings.getMemoryLayout());
+
+        ExecutorService producers = Executors.newFixedThreadPool(Math.max(1, pipes.size()));
+        try {
+            for (PipedAutomaton pipe: pipes) producers.execute(pipe::produce);
+            exploreLevel(level, settings.newTopExplorer(), sink, verbose);
+        } finally {
+            for (PipedAutomaton pipe: pipes) pipe.cancel();
+            producers.shutdownNow();
         }
+    }
 
-        product.resetStateMarkings();
-        return product;
+    /**
+     * Returns the compiled root if it has no sync children, otherwise the piped product of its subtree, which is added
+     * to pipes to be produced.
+     */
+    private static CompiledAutomaton pipeSubtree(Automaton root, ArrayList<Automaton> children, ActionTable actions,
+                                                 ProductSettings settings, ArrayList<PipedAutomaton> pipes) {
+        ArrayList<Automaton> syncChildren = GSQProduct.discoverChildren(root, children, actions);
+        if (syncChildren.isEmpty()) return CompiledAutomaton.compile(root, actions);
+
+        CompiledAutomaton[] operands = new CompiledAutomaton[syncChildren.size()];
+        for (int i = 0; i < operands.length; ++i)
+            operands[i] = pipeSubtree(syncChildren.get(i), otherChildren(children, syncChildren.get(i)), actions, settings, pipes);
+        PipedAutomaton pipe = new PipedAutomaton("sq" + root.getName(),
+                new ProductLevel(CompiledAutomaton.compile(root, actions), operands, actions, settings.getMemoryLayout()));
+        pipes.add(pipe);
+        return pipe;
     }
 
     /**
-     * Returns the subset of the children that share a common action with the root and are not equal to the root.
+     * Computes general square product by a single exploration of the lazy product of the whole tree; only the states
+     * and transitions of the topmost product are stored.
      */
-    public static ArrayList<Automaton> discoverChildren(Automaton root, ArrayList<Automaton> children, LinkedHashSet<String> syncActions) {
-        ArrayList<Automaton> syncChildren = new ArrayList<>();
-        for (Automaton child: children)
-            if (child != root && !root.getSyncActions(syncActions, child).isEmpty()) syncChildren.add(child);
+    private static void lazyProduct(Automaton root, ArrayList<Automaton> children, ActionTable actions,
+                                    ProductSettings settings, ProductSink sink, boolean verbose) {
+        ImplicitAutomaton tree = lazySubtree(root, children, actions);
+        if (verbose) System.out.println("exploring the lazy product of the tree of " + root.getName() + " in "
+                + tree.getBits() + " bits per state");
+        if (settings.isApproximate()) new ApproximateExplorer(settings).explore(tree, sink, verbose);
+        else new SequentialExplorer(settings).explore(tree, sink, verbose);
+    }
 
-        return syncChildren;
+    private static ImplicitAutomaton lazySubtree(Automaton root, ArrayList<Automaton> children, ActionTable actions) {
+        ArrayList<Automaton> syncChildren = GSQProduct.discoverChildren(root, children, actions);
+        if (syncChildren.isEmpty()) return CompiledAutomaton.compile(root, actions);
+
+        ImplicitAutomaton[] operands = new ImplicitAutomaton[syncChildren.size()];
+        for (int i = 0; i < operands.length; ++i)
+            operands[i] = lazySubtree(syncChildren.get(i), otherChildren(children, syncChildren.get(i)), actions);
+        return new LazyProduct("sq" + root.getName(), CompiledAutomaton.compile(root, actions), operands, actions);
+    }
+
+    static ArrayList<Automaton> otherChildren(ArrayList<Automaton> children, Automaton child) {
+        return children.stream().filter(kid -> kid != child).collect(Collectors.toCollection(ArrayList::new));
     }
 
     /**
-     * Computes general square product. Note - it's up to you to ensure that the structure of the automata net is tree-like.
-     * If there are cycles, then this will loop into infinity. It is also assumed that the root is not present in children.
+     * Reduces a subtree: reduces the subtrees of the sync children, forked if the pool has more than one thread and
+     * one by one in the order of the scheduler otherwise, then explores the level of the root and the reduced children.
+     * The children are used in their original order, so the result doesn't depend on the order of reductions. The
+     * topmost reduction explores into the sink and returns null, the others return compiled products held by the
+     * scheduler.
      */
-    public static Automaton generalSquareProduct(Automaton root, ArrayList<Automaton> children, LinkedHashSet<String> syncActions, boolean verbose) {
-        ArrayList<Automaton> syncChildren = GSQProduct.discoverChildren(root, children, syncActions);
-        if (syncChildren.isEmpty()) return root;
-
-        ArrayList<Automaton> reducedChildren = new ArrayList<>();
-        for (Automaton child: syncChildren) {
-            reducedChildren.add(GSQProduct.generalSquareProduct(child,
-                    children.stream().filter(kid -> kid != child).collect(Collectors.toCollection(ArrayList::new)),
-                    syncActions,
-                    verbose));
+    private static class SubtreeReduction extends RecursiveTask<CompositionScheduler.Product> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Automaton root;
+        private final ArrayList<Automaton> children;
+        private final ActionTable actions;
+        private final ProductSettings settings;
+        private final CompositionScheduler scheduler;
+        private final ProductSink sink;
+        private final boolean verbose;
+
+        SubtreeReduction(Automaton root, ArrayList<Automaton> children, ActionTable actions, ProductSettings settings,
+                         CompositionScheduler scheduler, ProductSink sink, boolean verbose) {
+            this.root = root;
+            this.children = children;
+            this.actions = actions;
+            this.settings = settings;
+            this.scheduler = scheduler;
+            this.sink = sink;
+            this.verbose = verbose;
         }
-        Automaton product = singleLevelProduct(root, reducedChildren, syncActions, verbose);
 
-        product.remapStates();
-        return product;
-    }
+        @Override
+        protected CompositionScheduler.Product compute() {
+            ArrayList<Automaton> syncChildren = GSQProduct.discoverChildren(this.root, this.children, this.actions);
+            if (syncChildren.isEmpty()) return this.scheduler.leaf(this.root);
+
+            ArrayList<SubtreeReduction> reductions = new ArrayList<>();
+            for (Automaton child: syncChildren)
+                reductions.add(new SubtreeReduction(child, otherChildren(this.children, child), this.actions, this.settings,
+                        this.scheduler, null, this.verbose));
+            CompositionScheduler.Product[] reduced = new CompositionScheduler.Product[reductions.size()];
+            if (this.settings.getSubtreeThreads() > 1) {
+                invokeAll(reductions);
+                for (int i = 0; i < reduced.length; ++i) reduced[i] = reductions.get(i).join();
+            } else {
+                for (int i: this.scheduler.order(syncChildren, this.children)) reduced[i] = reductions.get(i).compute();
+            }
 
-    public static Automaton generalSquareProduct(AutomataNet net, boolean verbose) {
-        Automaton root = net.getAutomata().get(0);
-        ArrayList<Automaton> children = new ArrayList<>();
-        for (int i = 1; i < net.getAutomata().size(); ++i) children.add(net.getAutomata().get(i));
+            // the children are released by the scheduler as they are compiled, only the compiled forms are explored
+            CompiledAutomaton[] operands = new CompiledAutomaton[reduced.length];
+            long operandBytes = 0;
+            for (int i = 0; i < reduced.length; ++i) {
+                operands[i] = this.scheduler.take(reduced[i]);
+                reduced[i] = null;
+                operandBytes += operands[i].getAllocatedBytes();
+            }
+            ProductLevel level = new ProductLevel(CompiledAutomaton.compile(this.root, this.actions), operands, this.actions,
+                    this.settings.getMemoryLayout());
+
+            ProductBuilder product = this.sink == null ? new ProductBuilder() : null;
+            this.scheduler.beginLevel(operandBytes);
+            try {
+                if (this.sink == null) exploreLevel(level, this.settings.newExplorer(), product, this.verbose);
+                else exploreLevel(level, this.settings.newTopExplorer(), this.sink, this.verbose);
+            } finally {
+                this.scheduler.endLevel(operandBytes);
+            }
+            if (this.sink != null) return null;
+
+            // the builder is released before the scheduler may wait for memory or spill the product
+            CompiledAutomaton compiled = CompiledAutomaton.compile(product, this.actions, "sq" + this.root.getName());
+            product = null;
+            return this.scheduler.hold(compiled);
+        }
 
-        return generalSquareProduct(root, children, net.getActions(), verbose);
     }
 
-}
\ No newline at end of file
+}
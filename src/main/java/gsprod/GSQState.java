@@ -1,112 +1,90 @@
 package gsprod;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 public class GSQState {
 
-    private Automaton root;
-    private Automaton activeChild;
-    private String rootState;
-    private String activeChildState;
-    private ArrayList<Automaton> children;
-    private ArrayList<String> memoryUnit;
+    private CompiledAutomaton root;
+    private CompiledAutomaton[] children;
+    private int activeChild;
+    private int rootState;
+    private int activeChildState;
+    private int[] memoryUnit;
 
-    public GSQState() {
-        this.memoryUnit = new ArrayList<>();
-    }
-
-    public GSQState(Automaton root, Automaton activeChild, ArrayList<Automaton> children, ArrayList<String> memoryUnit) {
-        this();
+    public GSQState(CompiledAutomaton root, CompiledAutomaton[] children, int activeChild, int[] memoryUnit) {
         this.root = root;
-        this.activeChild = activeChild;
         this.children = children;
+        this.activeChild = activeChild;
         this.memoryUnit = memoryUnit;
         this.setRootState(root.getInitial());
-        this.setActiveChildState(activeChild.getInitial());
+        this.setActiveChildState(children[activeChild].getInitial());
     }
 
-    public GSQState(GSQState state) {
-        this.root = state.root;
-        this.activeChild = state.activeChild;
-        this.children = state.getChildren();
-        this.memoryUnit = new ArrayList<>(state.getMemoryUnit());
-        this.setActiveChildState(state.getActiveChildState());
-        this.setRootState(state.getRootState());
-    }
-
-    public Automaton getRoot() {
+    public CompiledAutomaton getRoot() {
         return this.root;
     }
 
-    public Automaton getActiveChild() {
+    /**
+     * Returns the index of the active child in getChildren().
+     */
+    public int getActiveChild() {
         return this.activeChild;
     }
 
-    public void setActiveChild(Automaton child) {
-        if (!this.getChildren().contains(child)) throw new RuntimeException("Can't update active child to non-child.");
+    public void setActiveChild(int child) {
+        if (child < 0 || child >= this.getChildren().length) throw new RuntimeException("Can't update active child to non-child.");
         this.activeChild = child;
     }
 
-    public String getRootState() {
+    public int getRootState() {
         return this.rootState;
     }
 
-    public String getActiveChildState() {
+    public int getActiveChildState() {
         return this.activeChildState;
     }
 
-    public ArrayList<Automaton> getChildren() {
+    public CompiledAutomaton[] getChildren() {
         return this.children;
     }
 
-    public void setChildren(ArrayList<Automaton> children) {
-        this.children = children;
-    }
-    public ArrayList<String> getMemoryUnit() {
+    public int[] getMemoryUnit() {
         return this.memoryUnit;
     }
 
-    public void setRootState(String rootState) {
+    public void setRootState(int rootState) {
         this.rootState = rootState;
     }
 
-    public void setActiveChildState(String activeChildState) {
+    public void setActiveChildState(int activeChildState) {
         this.activeChildState = activeChildState;
     }
 
-    public void updateChildMemory(Automaton child, String newState) {
-        // rewrite when time permits
-        assert(children.size() == memoryUnit.size());
-        if (!child.getStates().contains(newState)) {
+    public void updateChildMemory(int child, int newState) {
+        assert(children.length == memoryUnit.length);
+        if (newState < 0 || newState >= this.getChildren()[child].getStateCount()) {
             throw new RuntimeException("Can't update memory: no state " + newState + ".");
         }
-
-        for (int i = 0; i < this.getChildren().size(); ++i) {
-            if (this.getChildren().get(i) == child) {
-                this.getMemoryUnit().set(i, newState);
-                return;
-            }
-        }
-
-        throw new RuntimeException("Can't update memory of unknown child: " + child.getName() + ".");
+        this.memoryUnit[child] = newState;
     }
 
-    public String getChildMemory(Automaton child) {
-        // rewrite when time permits
-        assert(children.size() == memoryUnit.size());
-
-        for (int i = 0; i < this.getChildren().size(); ++i)
-            if (this.getChildren().get(i) == child) return this.getMemoryUnit().get(i);
-
-        throw new RuntimeException("Can't fetch memory of unknown child: " + child.getName() + ".");
+    public int getChildMemory(int child) {
+        assert(children.length == memoryUnit.length);
+        return this.getMemoryUnit()[child];
     }
 
     public String toString() {
         String rootName = this.root == null? "": this.root.getName();
-        String activeChildName = this.activeChild == null? "": this.activeChild.getName();
+        CompiledAutomaton active = this.children == null? null: this.children[this.activeChild];
+        String activeChildName = active == null? "": active.getName();
+        String rootStateName = this.root == null? "": this.root.getStateName(this.rootState);
+        String activeChildStateName = active == null? "": active.getStateName(this.activeChildState);
+
+        String[] memoryNames = new String[this.memoryUnit.length];
+        for (int i = 0; i < memoryNames.length; ++i) memoryNames[i] = this.children[i].getStateName(this.memoryUnit[i]);
 
-        return "[root " + rootName + ":" + this.rootState + ", child " + activeChildName + ":" + this.activeChildState
-                + "] mem: " + this.getMemoryUnit().toString();
+        return "[root " + rootName + ":" + rootStateName + ", child " + activeChildName + ":" + activeChildStateName
+                + "] mem: " + Arrays.toString(memoryNames);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,209 @@
+package gsprod;
+
+/**
+ * Canonical primitive encoding of the product states of one composition level. A state (root state, active child,
+ * active child's state, memory unit) is bit-packed into a fixed number of longs (the width), so it can be stored in a
+ * slot of a long[] and compared or hashed word by word. Fields never straddle words. GSQState objects are only
+ * produced by decode, e.g. for output. If the codec has a MemoryTable, the memory unit is a single field with the id
+ * of the unit in the table; getChildMemory and setChildMemory then go through the table and are slow, the exploration
+ * uses the table directly.
+ */
+public class GSQStateCodec {
+
+    private static final int ROOT = 0;
+    private static final int ACTIVE_CHILD = 1;
+    private static final int ACTIVE_CHILD_STATE = 2;
+    private static final int MEMORY = 3;
+
+    private final CompiledAutomaton root;
+    private final CompiledAutomaton[] children;
+    private final MemoryTable memories;
+    private final int width;
+    private final int[] fieldWord;
+    private final int[] fieldShift;
+    private final long[] fieldMask;
+
+    public GSQStateCodec(CompiledAutomaton root, CompiledAutomaton[] children) {
+        this(root, children, null);
+    }
+
+    /**
+     * Makes a codec that keeps the memory units in the given table, or in the states if it is null.
+     */
+    public GSQStateCodec(CompiledAutomaton root, CompiledAutomaton[] children, MemoryTable memories) {
+        this.root = root;
+        this.children = children;
+        this.memories = memories;
+
+        int fieldCount = MEMORY + (memories == null ? children.length : 1);
+        int[] fieldBits = new int[fieldCount];
+        int maxChildStates = 1;
+        for (CompiledAutomaton child: children) maxChildStates = Math.max(maxChildStates, child.getStateBound());
+        fieldBits[ROOT] = bitsFor(root.getStateCount());
+        fieldBits[ACTIVE_CHILD] = bitsFor(children.length);
+        fieldBits[ACTIVE_CHILD_STATE] = bitsFor(maxChildStates);
+        if (memories != null) fieldBits[MEMORY] = bitsFor(Integer.MAX_VALUE);
+        else for (int i = 0; i < children.length; ++i) fieldBits[MEMORY + i] = bitsFor(children[i].getStateBound());
+
+        this.fieldWord = new int[fieldCount];
+        this.fieldShift = new int[fieldCount];
+        this.fieldMask = new long[fieldCount];
+        int word = 0;
+        int shift = 0;
+        for (int i = 0; i < fieldCount; ++i) {
+            if (shift + fieldBits[i] > Long.SIZE) {
+                ++word;
+                shift = 0;
+            }
+            this.fieldWord[i] = word;
+            this.fieldShift[i] = shift;
+            this.fieldMask[i] = (1L << fieldBits[i]) - 1;
+            shift += fieldBits[i];
+        }
+        this.width = word + 1;
+    }
+
+    /**
+     * Returns the number of bits needed to store values from [0, count).
+     */
+    private static int bitsFor(int count) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(count - 1));
+    }
+
+    /**
+     * Returns the number of longs taken by an encoded state.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Returns the first bits of the fields in the order of bits: the root state, the active child, its state and the
+     * memory of each child or the id of the memory unit.
+     */
+    public int[] getFieldStarts() {
+        int[] starts = new int[this.fieldWord.length];
+        for (int i = 0; i < starts.length; ++i) starts[i] = this.fieldWord[i] * Long.SIZE + this.fieldShift[i];
+        return starts;
+    }
+
+    /**
+     * Returns the number of fields that change with most transitions: the root state, the active child and its state.
+     */
+    public int getHeadFieldCount() {
+        return MEMORY;
+    }
+
+    public CompiledAutomaton getRoot() {
+        return this.root;
+    }
+
+    public CompiledAutomaton[] getChildren() {
+        return this.children;
+    }
+
+    /**
+     * Returns the table of the memory units or null if they are kept in the states.
+     */
+    public MemoryTable getMemories() {
+        return this.memories;
+    }
+
+    private int get(long[] slots, int base, int field) {
+        return (int) ((slots[base + this.fieldWord[field]] >>> this.fieldShift[field]) & this.fieldMask[field]);
+    }
+
+    private void set(long[] slots, int base, int field, int value) {
+        int pos = base + this.fieldWord[field];
+        long mask = this.fieldMask[field] << this.fieldShift[field];
+        slots[pos] = (slots[pos] & ~mask) | (((long) value << this.fieldShift[field]) & mask);
+    }
+
+    public int getRootState(long[] slots, int base) {
+        return this.get(slots, base, ROOT);
+    }
+
+    public void setRootState(long[] slots, int base, int state) {
+        this.set(slots, base, ROOT, state);
+    }
+
+    public int getActiveChild(long[] slots, int base) {
+        return this.get(slots, base, ACTIVE_CHILD);
+    }
+
+    public void setActiveChild(long[] slots, int base, int child) {
+        this.set(slots, base, ACTIVE_CHILD, child);
+    }
+
+    public int getActiveChildState(long[] slots, int base) {
+        return this.get(slots, base, ACTIVE_CHILD_STATE);
+    }
+
+    public void setActiveChildState(long[] slots, int base, int state) {
+        this.set(slots, base, ACTIVE_CHILD_STATE, state);
+    }
+
+    public int getChildMemory(long[] slots, int base, int child) {
+        if (this.memories == null) return this.get(slots, base, MEMORY + child);
+
+        long[] memory = new long[this.memories.getWidth()];
+        this.memories.get(this.getMemoryId(slots, base), memory, 0);
+        return this.memories.getChildMemory(memory, 0, child);
+    }
+
+    public void setChildMemory(long[] slots, int base, int child, int state) {
+        if (this.memories == null) {
+            this.set(slots, base, MEMORY + child, state);
+            return;
+        }
+
+        long[] memory = new long[this.memories.getWidth()];
+        this.memories.get(this.getMemoryId(slots, base), memory, 0);
+        this.memories.setChildMemory(memory, 0, child, state);
+        this.setMemoryId(slots, base, this.memories.intern(memory, 0));
+    }
+
+    /**
+     * Returns the id of the memory unit in the MemoryTable; the codec must have one.
+     */
+    public int getMemoryId(long[] slots, int base) {
+        return this.get(slots, base, MEMORY);
+    }
+
+    public void setMemoryId(long[] slots, int base, int id) {
+        this.set(slots, base, MEMORY, id);
+    }
+
+    public void encode(GSQState state, long[] slots, int base) {
+        for (int i = 0; i < this.width; ++i) slots[base + i] = 0;
+        this.setRootState(slots, base, state.getRootState());
+        this.setActiveChild(slots, base, state.getActiveChild());
+        this.setActiveChildState(slots, base, state.getActiveChildState());
+        if (this.memories == null) {
+            for (int i = 0; i < this.children.length; ++i) this.setChildMemory(slots, base, i, state.getChildMemory(i));
+            return;
+        }
+
+        long[] memory = new long[this.memories.getWidth()];
+        for (int i = 0; i < this.children.length; ++i) this.memories.setChildMemory(memory, 0, i, state.getChildMemory(i));
+        this.setMemoryId(slots, base, this.memories.intern(memory, 0));
+    }
+
+    public GSQState decode(long[] slots, int base) {
+        int[] memoryUnit = new int[this.children.length];
+        long[] memory = null;
+        if (this.memories != null) {
+            memory = new long[this.memories.getWidth()];
+            this.memories.get(this.getMemoryId(slots, base), memory, 0);
+        }
+        for (int i = 0; i < memoryUnit.length; ++i)
+            memoryUnit[i] = memory == null ? this.getChildMemory(slots, base, i) : this.memories.getChildMemory(memory, 0, i);
+
+        GSQState state = new GSQState(this.root, this.children, this.getActiveChild(slots, base), memoryUnit);
+        state.setRootState(this.getRootState(slots, base));
+        state.setActiveChildState(this.getActiveChildState(slots, base));
+
+        return state;
+    }
+
+}
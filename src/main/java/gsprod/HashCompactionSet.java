@@ -0,0 +1,73 @@
+package gsprod;
+
+/**
+ * Hash compaction: a state is visited if its 64-bit fingerprint is in an open-addressing table of fixed size, so a
+ * state takes 8 bytes whatever its width. A new state is omitted if its fingerprint equals one of the n stored ones,
+ * which happens with the probability of about n / 2^64.
+ */
+public class HashCompactionSet implements ApproximateStateSet {
+
+    private static final long EMPTY = 0L;
+    private static final double FINGERPRINTS = Math.pow(2, 64);
+
+    private final int width;
+    private final long[] table;
+    private final int mask;
+    private final int capacity;
+    private long size;
+    private double expectedOmissions;
+
+    /**
+     * Makes a table of at most the given number of bytes, a power of 2 of fingerprints, at most 3/4 of which are used.
+     */
+    public HashCompactionSet(int width, long bytes) {
+        long slots = Long.highestOneBit(Math.max(16, bytes / Long.BYTES));
+        if (slots > 1 << 30) throw new RuntimeException("The fingerprint table must have at most 8 GiB.");
+        this.width = width;
+        this.table = new long[(int) slots];
+        this.mask = this.table.length - 1;
+        this.capacity = 3 * (this.table.length / 4);
+    }
+
+    @Override
+    public boolean add(long[] slots, int base) {
+        long fingerprint = ApproximateStateSet.hash64(slots, base, this.width, 0L);
+        if (fingerprint == EMPTY) fingerprint = 1L;
+
+        // the high bits of the fingerprint pick the bucket, they are as well mixed as the low ones
+        int pos = (int) (fingerprint >>> 32) & this.mask;
+        while (this.table[pos] != EMPTY) {
+            if (this.table[pos] == fingerprint) return false;
+            pos = (pos + 1) & this.mask;
+        }
+        if (this.size == this.capacity)
+            throw new RuntimeException("The hash compaction table is full: " + this.capacity + " fingerprints fit, use a larger one.");
+
+        this.expectedOmissions += this.size / FINGERPRINTS;
+        this.table[pos] = fingerprint;
+        ++this.size;
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public double getExpectedOmissions() {
+        return this.expectedOmissions;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return 8L * this.table.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hash compaction: %d of %d fingerprints, expected omissions %.3g, probability of no omission %.12f",
+                this.size, this.capacity, this.expectedOmissions, this.getCompleteProbability());
+    }
+
+}
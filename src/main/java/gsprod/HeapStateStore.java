@@ -0,0 +1,222 @@
+package gsprod;
+
+import java.util.Arrays;
+
+/**
+ * The default, on-heap StateStore. The states and their hashes are kept in fixed-size pages of primitive arrays (so the
+ * store never copies them when it grows) and are indexed by an open-addressing table of ids with linear probing. When
+ * the table gets half full, a twice larger one is allocated and the old one is migrated a few buckets per insertion
+ * instead of all at once; until the migration ends lookups consult both tables.
+ */
+public class HeapStateStore implements StateStore {
+
+    private static final int EMPTY = -1;
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int MIGRATION_STEP = 8;
+
+    private final int width;
+    private long[][] statePages;
+    private int[][] hashPages;
+    private int size;
+
+    private int[] table;
+    private int[] oldTable;
+    private int migrated;
+
+    private long lookups;
+    private long hits;
+    private long probes;
+    private int maxProbeLength;
+    private int probeLength;
+
+    public HeapStateStore(int width) {
+        this.width = width;
+        this.statePages = new long[1][];
+        this.hashPages = new int[1][];
+        this.table = new int[64];
+        Arrays.fill(this.table, EMPTY);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public int add(long[] slots, int base) {
+        ++this.lookups;
+        int hash = hash(slots, base, this.width);
+
+        int id = this.lookup(hash, slots, base);
+        if (id != EMPTY) {
+            ++this.hits;
+            return id;
+        }
+
+        id = this.size++;
+        int page = id >>> PAGE_SHIFT;
+        if (page == this.statePages.length) {
+            this.statePages = Arrays.copyOf(this.statePages, 2 * page);
+            this.hashPages = Arrays.copyOf(this.hashPages, 2 * page);
+        }
+        if (this.statePages[page] == null) {
+            this.statePages[page] = new long[PAGE_SIZE * this.width];
+            this.hashPages[page] = new int[PAGE_SIZE];
+        }
+        System.arraycopy(slots, base, this.statePages[page], (id & (PAGE_SIZE - 1)) * this.width, this.width);
+        this.hashPages[page][id & (PAGE_SIZE - 1)] = hash;
+        insert(this.table, hash, id);
+
+        if (this.oldTable != null) this.migrate();
+        else if (2 * this.size > this.table.length) this.grow();
+
+        return id;
+    }
+
+    /**
+     * Returns the id of the state stored in slots at [base, base + width), or -1 if it is not stored.
+     */
+    public int indexOf(long[] slots, int base) {
+        ++this.lookups;
+        int hash = hash(slots, base, this.width);
+        int id = this.lookup(hash, slots, base);
+        if (id != EMPTY) ++this.hits;
+        return id;
+    }
+
+    @Override
+    public void get(int id, long[] slots, int base) {
+        System.arraycopy(this.statePages[id >>> PAGE_SHIFT], (id & (PAGE_SIZE - 1)) * this.width, slots, base, this.width);
+    }
+
+    /**
+     * Looks the state up in the table and, during a migration, in the old one, recording the probes of both as one
+     * lookup.
+     */
+    private int lookup(int hash, long[] slots, int base) {
+        this.probeLength = 0;
+        int id = this.find(this.table, hash, slots, base);
+        if (id == EMPTY && this.oldTable != null) id = this.find(this.oldTable, hash, slots, base);
+        this.recordProbes(this.probeLength);
+        return id;
+    }
+
+    private int find(int[] table, int hash, long[] slots, int base) {
+        int mask = table.length - 1;
+        int pos = hash & mask;
+        while (table[pos] != EMPTY) {
+            ++this.probeLength;
+            int id = table[pos];
+            if (this.hashPages[id >>> PAGE_SHIFT][id & (PAGE_SIZE - 1)] == hash && this.equalsStored(id, slots, base)) {
+                return id;
+            }
+            pos = (pos + 1) & mask;
+        }
+
+        return EMPTY;
+    }
+
+    private void recordProbes(int probeLength) {
+        this.probes += probeLength;
+        if (probeLength > this.maxProbeLength) this.maxProbeLength = probeLength;
+    }
+
+    private static void insert(int[] table, int hash, int id) {
+        int mask = table.length - 1;
+        int pos = hash & mask;
+        while (table[pos] != EMPTY) pos = (pos + 1) & mask;
+        table[pos] = id;
+    }
+
+    /**
+     * Starts an incremental migration to a twice larger table. The old table is half full, so moving
+     * MIGRATION_STEP >= 2 buckets per insertion ends the migration before the new table gets half full.
+     */
+    private void grow() {
+        this.oldTable = this.table;
+        this.table = new int[2 * this.oldTable.length];
+        Arrays.fill(this.table, EMPTY);
+        this.migrated = 0;
+    }
+
+    private void migrate() {
+        int end = Math.min(this.migrated + MIGRATION_STEP, this.oldTable.length);
+        for (int pos = this.migrated; pos < end; ++pos) {
+            int id = this.oldTable[pos];
+            if (id != EMPTY) insert(this.table, this.hashPages[id >>> PAGE_SHIFT][id & (PAGE_SIZE - 1)], id);
+        }
+        this.migrated = end;
+        if (this.migrated == this.oldTable.length) this.oldTable = null;
+    }
+
+    private boolean equalsStored(int id, long[] slots, int base) {
+        long[] page = this.statePages[id >>> PAGE_SHIFT];
+        int stored = (id & (PAGE_SIZE - 1)) * this.width;
+        for (int i = 0; i < this.width; ++i) if (page[stored + i] != slots[base + i]) return false;
+        return true;
+    }
+
+    /**
+     * Hashes the words of a state with the murmur3 finalizer applied after each word.
+     */
+    static int hash(long[] slots, int base, int width) {
+        long h = 0;
+        for (int i = 0; i < width; ++i) {
+            h ^= slots[base + i];
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+        }
+        return (int) h;
+    }
+
+    public long getLookups() {
+        return this.lookups;
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.lookups - this.hits;
+    }
+
+    public double getAverageProbeLength() {
+        return this.lookups == 0 ? 0 : (double) this.probes / this.lookups;
+    }
+
+    public int getMaxProbeLength() {
+        return this.maxProbeLength;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the arrays of the store, without object headers.
+     */
+    @Override
+    public long getAllocatedBytes() {
+        long bytes = 4L * this.table.length + (this.oldTable == null ? 0 : 4L * this.oldTable.length);
+        for (long[] page: this.statePages) if (page != null) bytes += 8L * page.length + 4L * PAGE_SIZE;
+        return bytes;
+    }
+
+    public double getBytesPerState() {
+        return this.size == 0 ? 0 : (double) this.getAllocatedBytes() / this.size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d states (%d longs each), %d lookups: %d hits, %d misses, avg probe length %.2f, " +
+                        "max probe length %d, %.1f bytes per state", this.size, this.width, this.lookups, this.hits,
+                this.getMisses(), this.getAverageProbeLength(), this.maxProbeLength, this.getBytesPerState());
+    }
+
+}
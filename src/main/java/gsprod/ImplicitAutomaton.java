@@ -0,0 +1,56 @@
+package gsprod;
+
+import java.util.BitSet;
+
+/**
+ * An automaton given by its initial state and successor function instead of its states and transitions. A state is
+ * encoded in getBits() bits, stored from bit 0 of getWidth() longs; the unused bits are 0, so equal states have equal
+ * encodings. The labels are the ids of the net's ActionTable.
+ */
+public interface ImplicitAutomaton {
+
+    String getName();
+
+    int getBits();
+
+    default int getWidth() {
+        return Math.max(1, (this.getBits() + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    /**
+     * Returns the first bits of the components of a state in increasing order, e.g., for a TreeStateStore. By default
+     * the state is a single component.
+     */
+    default int[] getFieldStarts() {
+        return new int[] { 0 };
+    }
+
+    /**
+     * Returns the number of the first components that change with most transitions, 0 if unknown.
+     */
+    default int getHeadFieldCount() {
+        return 0;
+    }
+
+    /**
+     * Encodes the initial state to slots at [base, base + width).
+     */
+    void encodeInitial(long[] slots, int base);
+
+    /**
+     * Passes to out the transitions of the state encoded in curr at [base, base + width), once per transition. The
+     * successors are built in succ, which must have at least width longs and is overwritten between the calls of out.
+     */
+    void successors(long[] curr, int base, long[] succ, SuccessorConsumer out);
+
+    /**
+     * Returns a superset of the labels of the reachable transitions. Don't modify it.
+     */
+    BitSet getLabelSet();
+
+    /**
+     * Returns true if the label is in the alphabet of the automaton: for a product, if some reachable transition has it.
+     */
+    boolean hasLabel(int label);
+
+}
@@ -0,0 +1,305 @@
+package gsprod;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The GSQ product of a root and its children given as implicit automata, computed on demand: no state or transition
+ * of the product is stored, a state is the bit string (root state, active child + 1, active child's state, memory of
+ * the children) and the successor function pulls the successors of the active child through the tree. The active
+ * child field 0 marks the dummy initial state, whose epsilon transitions lead to the initial states with each child
+ * active, as in the materialized product.
+ * <p>
+ * A label of the root is local unless it synchronizes with a child, i.e., some reachable transition of the child has
+ * it. For a child that is a product, this is decided on first use by searching the child's states for the label; the
+ * search keeps its visited set, which may grow to all the reachable states of the child, until it is exhausted or all
+ * the synchronizing labels of the child are found, so the following searches resume it.
+ */
+public class LazyProduct implements ImplicitAutomaton {
+
+    private static final int UNKNOWN = 0;
+    private static final int LOCAL = 1;
+    private static final int SYNC = 2;
+
+    private final String name;
+    private final CompiledAutomaton root;
+    private final ImplicitAutomaton[] children;
+    private final int epsilon;
+    private final BitSet labelSet;
+    private final BitSet[] childLocalLabels;
+    private final int[] rootLabelKinds;
+
+    private final int rootBits;
+    private final int activeOffset;
+    private final int activeBits;
+    private final int activeStateOffset;
+    private final int activeStateBits;
+    private final int[] memoryOffsets;
+    private final int bits;
+    private final int maxChildWidth;
+
+    // the search for reachable labels, see hasLabel
+    private final BitSet syncLabels;
+    private BitSet reachableLabels;
+    private BitSet undecidedLabels;
+    private HeapStateStore searchStore;
+    private int searchCursor;
+    private boolean searchDone;
+
+    public LazyProduct(String name, CompiledAutomaton root, ImplicitAutomaton[] children, ActionTable actions) {
+        this.name = name;
+        this.root = root;
+        this.children = children;
+        this.epsilon = actions.intern("epsilon");
+
+        // a label of a child is local unless it synchronizes with the root
+        BitSet rootSyncLabels = (BitSet) root.getLabelSet().clone();
+        rootSyncLabels.and(actions.getSyncFlags());
+        this.childLocalLabels = new BitSet[children.length];
+        this.labelSet = (BitSet) root.getLabelSet().clone();
+        this.labelSet.set(this.epsilon);
+        for (int i = 0; i < children.length; ++i) {
+            this.childLocalLabels[i] = (BitSet) children[i].getLabelSet().clone();
+            this.childLocalLabels[i].andNot(rootSyncLabels);
+            this.labelSet.or(children[i].getLabelSet());
+        }
+        this.syncLabels = (BitSet) this.labelSet.clone();
+        this.syncLabels.and(actions.getSyncFlags());
+
+        // the labels of the root that no child can have are local, the others are decided by rootLabelKind
+        this.rootLabelKinds = new int[Math.max(root.getLabelSet().length(), 1)];
+        for (int label = root.getLabelSet().nextSetBit(0); label >= 0; label = root.getLabelSet().nextSetBit(label + 1)) {
+            boolean maybeSync = false;
+            for (ImplicitAutomaton child: children) maybeSync |= child.getLabelSet().get(label);
+            this.rootLabelKinds[label] = maybeSync && actions.isSync(label) ? UNKNOWN : LOCAL;
+        }
+
+        int maxChildBits = 1;
+        int maxChildWidth = 1;
+        for (ImplicitAutomaton child: children) {
+            maxChildBits = Math.max(maxChildBits, child.getBits());
+            maxChildWidth = Math.max(maxChildWidth, child.getWidth());
+        }
+        this.rootBits = root.getBits();
+        this.activeOffset = this.rootBits;
+        this.activeBits = Integer.SIZE - Integer.numberOfLeadingZeros(children.length);
+        this.activeStateOffset = this.activeOffset + this.activeBits;
+        this.activeStateBits = maxChildBits;
+        this.memoryOffsets = new int[children.length + 1];
+        this.memoryOffsets[0] = this.activeStateOffset + this.activeStateBits;
+        for (int i = 0; i < children.length; ++i) this.memoryOffsets[i + 1] = this.memoryOffsets[i] + children[i].getBits();
+        this.bits = this.memoryOffsets[children.length];
+        this.maxChildWidth = maxChildWidth;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public int getBits() {
+        return this.bits;
+    }
+
+    /**
+     * The root state, the active child, its state and the components of the memory of each child.
+     */
+    @Override
+    public int[] getFieldStarts() {
+        int[] starts = { 0, this.activeOffset, this.activeStateOffset };
+        for (int i = 0; i < this.children.length; ++i) {
+            int[] childStarts = this.children[i].getFieldStarts();
+            int length = starts.length;
+            starts = Arrays.copyOf(starts, length + childStarts.length);
+            for (int j = 0; j < childStarts.length; ++j) starts[length + j] = this.memoryOffsets[i] + childStarts[j];
+        }
+        return starts;
+    }
+
+    /**
+     * The root state, the active child and its state.
+     */
+    @Override
+    public int getHeadFieldCount() {
+        return 3;
+    }
+
+    @Override
+    public BitSet getLabelSet() {
+        return this.labelSet;
+    }
+
+    @Override
+    public void encodeInitial(long[] slots, int base) {
+        Arrays.fill(slots, base, base + this.getWidth(), 0L);
+    }
+
+    @Override
+    public void successors(long[] curr, int base, long[] succ, SuccessorConsumer out) {
+        int width = this.getWidth();
+        long active = readBits(curr, base, this.activeOffset, this.activeBits);
+        long[] childCurr = new long[this.maxChildWidth];
+        long[] childSucc = new long[this.maxChildWidth];
+
+        // the dummy initial state: the initial states of the root and the children, each child active in turn
+        if (active == 0) {
+            Arrays.fill(succ, 0, width, 0L);
+            this.root.encodeInitial(childCurr, 0);
+            copyBits(childCurr, 0, 0, succ, 0, 0, this.rootBits);
+            for (int i = 0; i < this.children.length; ++i) {
+                Arrays.fill(childCurr, 0L);
+                this.children[i].encodeInitial(childCurr, 0);
+                copyBits(childCurr, 0, 0, succ, 0, this.memoryOffsets[i], this.children[i].getBits());
+            }
+            for (int i = 0; i < this.children.length; ++i) {
+                writeBits(succ, 0, this.activeOffset, this.activeBits, i + 1);
+                this.setActiveState(succ, i);
+                out.accept(this.epsilon, succ, 0);
+            }
+            return;
+        }
+
+        int activeChild = (int) active - 1;
+        ImplicitAutomaton child = this.children[activeChild];
+        int childBits = child.getBits();
+        int rootState = (int) readBits(curr, base, 0, this.rootBits);
+        Arrays.fill(childCurr, 0L);
+        copyBits(curr, base, this.activeStateOffset, childCurr, 0, 0, childBits);
+
+        // the local moves of the child and the synchronized moves, matched with the transitions of the root by label
+        child.successors(childCurr, 0, childSucc, (label, slots, slotsBase) -> {
+            if (this.childLocalLabels[activeChild].get(label)) {
+                System.arraycopy(curr, base, succ, 0, width);
+                copyBits(slots, slotsBase, 0, succ, 0, this.activeStateOffset, childBits);
+                out.accept(label, succ, 0);
+                return;
+            }
+
+            int group = this.root.findGroup(rootState, label);
+            if (group < 0) return;
+            for (int rootTrans = this.root.groupStart(group); rootTrans < this.root.groupEnd(group); ++rootTrans) {
+                System.arraycopy(curr, base, succ, 0, width);
+                writeBits(succ, 0, 0, this.rootBits, this.root.getTarget(rootTrans));
+                copyBits(slots, slotsBase, 0, succ, 0, this.memoryOffsets[activeChild], childBits);
+
+                // wake up a child from memory
+                for (int nextChild = 0; nextChild < this.children.length; ++nextChild) {
+                    writeBits(succ, 0, this.activeOffset, this.activeBits, nextChild + 1);
+                    this.setActiveState(succ, nextChild);
+                    out.accept(label, succ, 0);
+                }
+            }
+        });
+
+        // the local moves of the root
+        for (int group = this.root.firstGroup(rootState); group < this.root.lastGroup(rootState); ++group) {
+            int label = this.root.getGroupLabel(group);
+            if (!this.isRootLocal(label)) continue;
+
+            for (int rootTrans = this.root.groupStart(group); rootTrans < this.root.groupEnd(group); ++rootTrans) {
+                System.arraycopy(curr, base, succ, 0, width);
+                writeBits(succ, 0, 0, this.rootBits, this.root.getTarget(rootTrans));
+                out.accept(label, succ, 0);
+            }
+        }
+    }
+
+    /**
+     * Copies the memory of the child to the active child's state field, clearing the bits it doesn't use.
+     */
+    private void setActiveState(long[] slots, int child) {
+        int childBits = this.children[child].getBits();
+        copyBits(slots, 0, this.memoryOffsets[child], slots, 0, this.activeStateOffset, childBits);
+        for (int offset = childBits; offset < this.activeStateBits; offset += Long.SIZE)
+            writeBits(slots, 0, this.activeStateOffset + offset, Math.min(Long.SIZE, this.activeStateBits - offset), 0L);
+    }
+
+    /**
+     * A label of the root is local unless some child has a reachable transition with it. The decisions are cached; a
+     * race only makes two threads store the same decision.
+     */
+    private boolean isRootLocal(int label) {
+        int kind = this.rootLabelKinds[label];
+        if (kind == UNKNOWN) {
+            kind = LOCAL;
+            for (ImplicitAutomaton child: this.children)
+                if (child.getLabelSet().get(label) && child.hasLabel(label)) kind = SYNC;
+            this.rootLabelKinds[label] = kind;
+        }
+        return kind == LOCAL;
+    }
+
+    /**
+     * Returns true if a reachable transition has the label, searching the states of the product until one is found.
+     * Only the synchronizing labels are decided, they are the only ones the parent asks about.
+     */
+    @Override
+    public synchronized boolean hasLabel(int label) {
+        if (!this.syncLabels.get(label)) {
+            if (!this.labelSet.get(label)) return false;
+            throw new RuntimeException("The lazy product " + this.name + " decides only the synchronizing labels.");
+        }
+        if (this.reachableLabels == null) {
+            this.reachableLabels = new BitSet();
+            this.undecidedLabels = (BitSet) this.syncLabels.clone();
+            this.searchStore = new HeapStateStore(this.getWidth());
+            long[] initial = new long[this.getWidth()];
+            this.encodeInitial(initial, 0);
+            this.searchStore.add(initial, 0);
+        }
+
+        long[] curr = new long[this.getWidth()];
+        long[] succ = new long[this.getWidth()];
+        while (!this.reachableLabels.get(label) && !this.searchDone) {
+            this.searchStore.get(this.searchCursor++, curr, 0);
+            this.successors(curr, 0, succ, (succLabel, slots, base) -> {
+                this.reachableLabels.set(succLabel);
+                this.undecidedLabels.clear(succLabel);
+                this.searchStore.add(slots, base);
+            });
+
+            // once every state was searched or every synchronizing label was found, the visited set is no longer needed
+            if (this.searchCursor == this.searchStore.size() || this.undecidedLabels.isEmpty()) {
+                this.searchDone = true;
+                this.searchStore = null;
+            }
+        }
+
+        return this.reachableLabels.get(label);
+    }
+
+    /**
+     * Returns the len bits (at most 64) of the state in slots from base that start at bit offset.
+     */
+    static long readBits(long[] slots, int base, int offset, int len) {
+        int word = base + (offset >>> 6);
+        int shift = offset & 63;
+        long value = slots[word] >>> shift;
+        if (shift + len > Long.SIZE) value |= slots[word + 1] << (Long.SIZE - shift);
+        return len == Long.SIZE ? value : value & ((1L << len) - 1);
+    }
+
+    /**
+     * Sets the len bits (at most 64) of the state in slots from base that start at bit offset to value.
+     */
+    static void writeBits(long[] slots, int base, int offset, int len, long value) {
+        int word = base + (offset >>> 6);
+        int shift = offset & 63;
+        long mask = len == Long.SIZE ? -1L : (1L << len) - 1;
+        value &= mask;
+        slots[word] = (slots[word] & ~(mask << shift)) | (value << shift);
+        if (shift + len > Long.SIZE) {
+            long highMask = (1L << (shift + len - Long.SIZE)) - 1;
+            slots[word + 1] = (slots[word + 1] & ~highMask) | (value >>> (Long.SIZE - shift));
+        }
+    }
+
+    static void copyBits(long[] from, int fromBase, int fromOffset, long[] to, int toBase, int toOffset, int len) {
+        for (int done = 0; done < len; done += Long.SIZE) {
+            int chunk = Math.min(Long.SIZE, len - done);
+            writeBits(to, toBase, toOffset + done, chunk, readBits(from, fromBase, fromOffset + done, chunk));
+        }
+    }
+
+}
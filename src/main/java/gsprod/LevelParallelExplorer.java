@@ -0,0 +1,260 @@
+package gsprod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A level-synchronous parallel breadth-first exploration. The visited set is split by state hash into one partition
+ * per thread, each owned by a single thread at a time, so no locking is needed. Every BFS level runs in three phases
+ * separated by barriers:
+ * 1. the frontier is cut into chunks expanded in parallel; each successor is buffered together with its source and
+ *    label in the buffer of its partition,
+ * 2. the partitions deduplicate their buffered successors in parallel, in a fixed order of buffers,
+ * 3. the new states get ids (partition by partition, so the numbering doesn't depend on timing), then the transitions
+ *    are resolved and the next frontier is gathered in parallel.
+ */
+public class LevelParallelExplorer implements ProductExplorer {
+
+    private final int threads;
+
+    public LevelParallelExplorer(int threads) {
+        if (threads < 1) throw new RuntimeException("The number of threads must be positive.");
+        this.threads = threads;
+    }
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            this.explore(level, product, verbose, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void explore(ProductLevel level, ProductSink product, boolean verbose, ExecutorService pool) {
+        int width = level.getWidth();
+        int partitions = this.threads;
+        HeapStateStore[] stores = new HeapStateStore[partitions];
+        int[][] globalIds = new int[partitions][];
+        for (int p = 0; p < partitions; ++p) {
+            stores[p] = new HeapStateStore(width);
+            globalIds[p] = new int[16];
+        }
+
+        // the initial states make the first frontier, state i is state i + 1 of the product
+        long[] frontier = new long[level.getInitialCount() * width];
+        long[] succ = new long[width];
+        int stateCount = 0;
+        for (int i = 0; i < level.getInitialCount(); ++i) {
+            level.encodeInitial(i, succ, 0);
+            int p = partition(HeapStateStore.hash(succ, 0, width), partitions);
+            int local = stores[p].add(succ, 0);
+            if (local == stores[p].size() - 1) {
+                globalIds[p] = ensureLength(globalIds[p], local + 1);
+                globalIds[p][local] = stateCount;
+                System.arraycopy(succ, 0, frontier, stateCount * width, width);
+                ++stateCount;
+            }
+            product.addTransition(0, level.getEpsilon(), globalIds[p][local] + 1);
+        }
+
+        int frontierStart = 0;
+        int levels = 0;
+        CandidateBuffer[][] buffers = new CandidateBuffer[this.threads][partitions];
+        for (int t = 0; t < this.threads; ++t)
+            for (int p = 0; p < partitions; ++p) buffers[t][p] = new CandidateBuffer(width);
+
+        while (stateCount > frontierStart) {
+            ++levels;
+            final long[] currFrontier = frontier;
+            final int frontierBase = frontierStart;
+            final int frontierSize = stateCount - frontierStart;
+            final int chunk = (frontierSize + this.threads - 1) / this.threads;
+
+            // phase 1: expand the chunks of the frontier
+            ArrayList<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < this.threads; ++t) {
+                final CandidateBuffer[] threadBuffers = buffers[t];
+                final int from = Math.min(frontierSize, t * chunk);
+                final int to = Math.min(frontierSize, from + chunk);
+                tasks.add(() -> {
+                    for (CandidateBuffer buffer: threadBuffers) buffer.clear();
+                    long[] curr = new long[width];
+                    long[] next = new long[width];
+                    for (int i = from; i < to; ++i) {
+                        System.arraycopy(currFrontier, i * width, curr, 0, width);
+                        int source = frontierBase + i + 1;
+                        level.expand(curr, next, (label, slots, base) -> threadBuffers[
+                                partition(HeapStateStore.hash(slots, base, width), partitions)].add(source, label, slots, base));
+                    }
+                    return null;
+                });
+            }
+            invokeAll(pool, tasks);
+
+            // phase 2: deduplicate the successors in each partition, the new ones get consecutive local ids
+            final int[] firstNewLocal = new int[partitions];
+            tasks.clear();
+            for (int p = 0; p < partitions; ++p) {
+                final int partition = p;
+                firstNewLocal[p] = stores[p].size();
+                tasks.add(() -> {
+                    for (int t = 0; t < this.threads; ++t) {
+                        CandidateBuffer buffer = buffers[t][partition];
+                        for (int j = 0; j < buffer.size(); ++j) buffer.setTarget(j, stores[partition].add(buffer.getStates(), j * width));
+                    }
+                    return null;
+                });
+            }
+            invokeAll(pool, tasks);
+
+            // phase 3: number the new states partition by partition, resolve the transitions and gather the next frontier
+            int levelStart = stateCount;
+            for (int p = 0; p < partitions; ++p) {
+                globalIds[p] = ensureLength(globalIds[p], stores[p].size());
+                for (int local = firstNewLocal[p]; local < stores[p].size(); ++local) globalIds[p][local] = stateCount++;
+            }
+
+            final long[] nextFrontier = new long[(stateCount - levelStart) * width];
+            final int[][] triples = new int[this.threads][];
+            tasks.clear();
+            for (int t = 0; t < this.threads; ++t) {
+                final int thread = t;
+                tasks.add(() -> {
+                    int count = 0;
+                    for (CandidateBuffer buffer: buffers[thread]) count += buffer.size();
+                    int[] resolved = new int[3 * count];
+                    int pos = 0;
+                    for (int p = 0; p < partitions; ++p) {
+                        CandidateBuffer buffer = buffers[thread][p];
+                        for (int j = 0; j < buffer.size(); ++j) {
+                            resolved[pos++] = buffer.getSource(j);
+                            resolved[pos++] = buffer.getLabel(j);
+                            resolved[pos++] = globalIds[p][buffer.getTarget(j)] + 1;
+                        }
+                    }
+                    triples[thread] = resolved;
+                    return null;
+                });
+            }
+            for (int p = 0; p < partitions; ++p) {
+                final int partition = p;
+                tasks.add(() -> {
+                    for (int local = firstNewLocal[partition]; local < stores[partition].size(); ++local)
+                        stores[partition].get(local, nextFrontier, (globalIds[partition][local] - levelStart) * width);
+                    return null;
+                });
+            }
+            invokeAll(pool, tasks);
+
+            for (int[] resolved: triples) product.addTransitions(resolved, resolved.length / 3);
+            frontier = nextFrontier;
+            frontierStart = levelStart;
+        }
+
+        if (verbose) {
+            System.out.println("visited store: " + stateCount + " states in " + partitions + " partitions, " + levels + " BFS levels");
+            for (int p = 0; p < partitions; ++p) System.out.println("  partition " + p + ": " + stores[p]);
+        }
+        product.setStateCount(stateCount + 1);
+    }
+
+    /**
+     * Maps a hash to a partition using its high bits, the low ones are used by the stores themselves.
+     */
+    private static int partition(int hash, int partitions) {
+        return (int) (((hash >>> 8) * (long) partitions) >>> 24);
+    }
+
+    private static int[] ensureLength(int[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+
+    /**
+     * Runs the tasks and waits for all of them, rethrowing the failure of a task.
+     */
+    static void invokeAll(ExecutorService pool, List<? extends Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future: pool.invokeAll(tasks)) future.get();
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted exploration.", iex);
+        } catch (ExecutionException eex) {
+            if (eex.getCause() instanceof RuntimeException) throw (RuntimeException) eex.getCause();
+            if (eex.getCause() instanceof Error) throw (Error) eex.getCause();
+            throw new RuntimeException(eex.getCause());
+        }
+    }
+
+    /**
+     * Successors buffered during a BFS level: their sources, labels and encoded states, and, after deduplication,
+     * their local ids in the partition.
+     */
+    private static class CandidateBuffer {
+
+        private final int width;
+        private int size;
+        private int[] sources;
+        private int[] labels;
+        private int[] targets;
+        private long[] states;
+
+        CandidateBuffer(int width) {
+            this.width = width;
+            this.sources = new int[16];
+            this.labels = new int[16];
+            this.targets = new int[16];
+            this.states = new long[16 * width];
+        }
+
+        void clear() {
+            this.size = 0;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        void add(int source, int label, long[] slots, int base) {
+            if (this.size == this.sources.length) {
+                this.sources = Arrays.copyOf(this.sources, 2 * this.size);
+                this.labels = Arrays.copyOf(this.labels, 2 * this.size);
+                this.targets = Arrays.copyOf(this.targets, 2 * this.size);
+                this.states = Arrays.copyOf(this.states, 2 * this.size * this.width);
+            }
+            this.sources[this.size] = source;
+            this.labels[this.size] = label;
+            System.arraycopy(slots, base, this.states, this.size * this.width, this.width);
+            ++this.size;
+        }
+
+        int getSource(int i) {
+            return this.sources[i];
+        }
+
+        int getLabel(int i) {
+            return this.labels[i];
+        }
+
+        int getTarget(int i) {
+            return this.targets[i];
+        }
+
+        void setTarget(int i, int target) {
+            this.targets[i] = target;
+        }
+
+        long[] getStates() {
+            return this.states;
+        }
+
+    }
+
+}
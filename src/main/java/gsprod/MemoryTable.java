@@ -0,0 +1,245 @@
+package gsprod;
+
+import java.util.Arrays;
+
+/**
+ * The memory units of the product states of one composition level, hash-consed: every distinct memory unit is stored
+ * once and a state refers to it by its id. So the states that differ only in the root, the active child or its state
+ * share their memory, a local move keeps the id of its source and a synchronized move, which changes the memory of one
+ * child, interns the new version once for all the children woken up.
+ * <p>
+ * The callers work on the dense form of a unit, bit-packed like the fields of GSQStateCodec, which is also how the
+ * units of a level with less than SPARSE_BRANCHING children are stored. A wider level stores a unit in the sparse form
+ * if it is shorter: the number of children that are not in their initial state followed by the (child, state) pairs
+ * of these children in the order of children; otherwise it stores -1 followed by the dense form. The choice depends
+ * only on the unit, so the stored words are canonical and are hashed and compared as they are. Most children of a wide
+ * level rest in their initial state, so a sparse unit is usually much shorter than the dense one.
+ * <p>
+ * The interning is synchronized; the reads are lock-free, the pages are never moved and their directories are
+ * published by volatile writes. A reader must obtain an id from the thread that interned it with a happens-before
+ * edge, as the ids of a StateStore.
+ */
+public class MemoryTable {
+
+    public static final int SPARSE_BRANCHING = 8;
+
+    private static final int EMPTY = -1;
+    private static final int ID_PAGE_SHIFT = 12;
+    private static final int ID_PAGE_SIZE = 1 << ID_PAGE_SHIFT;
+    private static final int WORD_PAGE_SIZE = 1 << 16;
+
+    private final int width;
+    private final int[] fieldWord;
+    private final int[] fieldShift;
+    private final long[] fieldMask;
+
+    private final boolean sparse;
+    private final int childBits;
+    private final int stateBits;
+    private final int entriesPerWord;
+
+    private volatile long[][] wordPages;
+    private volatile long[][] offsetPages;
+    private int[] hashes;
+    private int[] table;
+    private int size;
+    private long words;
+    private long lookups;
+    private final long[] encoded;
+
+    public MemoryTable(CompiledAutomaton[] children) {
+        this.fieldWord = new int[children.length];
+        this.fieldShift = new int[children.length];
+        this.fieldMask = new long[children.length];
+        int maxBits = 1;
+        int word = 0;
+        int shift = 0;
+        for (int i = 0; i < children.length; ++i) {
+            int bits = bitsFor(children[i].getStateBound());
+            maxBits = Math.max(maxBits, bits);
+            if (shift + bits > Long.SIZE) {
+                ++word;
+                shift = 0;
+            }
+            this.fieldWord[i] = word;
+            this.fieldShift[i] = shift;
+            this.fieldMask[i] = (1L << bits) - 1;
+            shift += bits;
+        }
+        this.width = word + 1;
+
+        this.sparse = children.length >= SPARSE_BRANCHING;
+        this.childBits = bitsFor(children.length);
+        this.stateBits = maxBits;
+        this.entriesPerWord = Long.SIZE / (this.childBits + this.stateBits);
+        int maxWords = this.sparse ? 1 + this.width : this.width;
+        if (maxWords > WORD_PAGE_SIZE) throw new RuntimeException("A memory unit of " + children.length + " children doesn't fit in a page.");
+
+        this.wordPages = new long[1][];
+        this.offsetPages = new long[1][];
+        this.hashes = new int[ID_PAGE_SIZE];
+        this.table = new int[64];
+        Arrays.fill(this.table, EMPTY);
+        this.encoded = new long[maxWords];
+    }
+
+    private static int bitsFor(int count) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(count - 1));
+    }
+
+    /**
+     * Returns the number of longs taken by the dense form of a memory unit.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    public boolean isSparse() {
+        return this.sparse;
+    }
+
+    public int getChildMemory(long[] memory, int base, int child) {
+        return (int) ((memory[base + this.fieldWord[child]] >>> this.fieldShift[child]) & this.fieldMask[child]);
+    }
+
+    public void setChildMemory(long[] memory, int base, int child, int state) {
+        int pos = base + this.fieldWord[child];
+        long mask = this.fieldMask[child] << this.fieldShift[child];
+        memory[pos] = (memory[pos] & ~mask) | (((long) state << this.fieldShift[child]) & mask);
+    }
+
+    /**
+     * Copies the dense form of the memory unit with the given id to memory at [base, base + width).
+     */
+    public void get(int id, long[] memory, int base) {
+        long offset = this.offsetPages[id >>> ID_PAGE_SHIFT][id & (ID_PAGE_SIZE - 1)];
+        long[] page = this.wordPages[(int) (offset / WORD_PAGE_SIZE)];
+        int pos = (int) (offset % WORD_PAGE_SIZE);
+        if (!this.sparse || page[pos] < 0) {
+            System.arraycopy(page, this.sparse ? pos + 1 : pos, memory, base, this.width);
+            return;
+        }
+
+        Arrays.fill(memory, base, base + this.width, 0L);
+        int count = (int) page[pos];
+        int entryBits = this.childBits + this.stateBits;
+        for (int i = 0; i < count; ++i) {
+            long entry = page[pos + 1 + i / this.entriesPerWord] >>> ((i % this.entriesPerWord) * entryBits);
+            int child = (int) (entry & ((1L << this.childBits) - 1));
+            this.setChildMemory(memory, base, child, (int) ((entry >>> this.childBits) & ((1L << this.stateBits) - 1)));
+        }
+    }
+
+    /**
+     * Returns the id of the memory unit whose dense form is in memory at [base, base + width), storing it if it is new.
+     */
+    public synchronized int intern(long[] memory, int base) {
+        ++this.lookups;
+        int length = this.encode(memory, base);
+        int hash = HeapStateStore.hash(this.encoded, 0, length);
+        int mask = this.table.length - 1;
+        int pos = hash & mask;
+        while (this.table[pos] != EMPTY) {
+            int id = this.table[pos];
+            if (this.hashes[id] == hash && this.equalsStored(id, length)) return id;
+            pos = (pos + 1) & mask;
+        }
+
+        // a unit never straddles word pages
+        long[][] wordPages = this.wordPages;
+        int wordPage = (int) (this.words / WORD_PAGE_SIZE);
+        if ((this.words + length - 1) / WORD_PAGE_SIZE != wordPage) this.words = (long) ++wordPage * WORD_PAGE_SIZE;
+        if (wordPage == wordPages.length) wordPages = Arrays.copyOf(wordPages, 2 * wordPage);
+        if (wordPages[wordPage] == null) wordPages[wordPage] = new long[WORD_PAGE_SIZE];
+        System.arraycopy(this.encoded, 0, wordPages[wordPage], (int) (this.words % WORD_PAGE_SIZE), length);
+        this.wordPages = wordPages;
+
+        int id = this.size++;
+        long[][] offsetPages = this.offsetPages;
+        int offsetPage = id >>> ID_PAGE_SHIFT;
+        if (offsetPage == offsetPages.length) offsetPages = Arrays.copyOf(offsetPages, 2 * offsetPage);
+        if (offsetPages[offsetPage] == null) offsetPages[offsetPage] = new long[ID_PAGE_SIZE];
+        offsetPages[offsetPage][id & (ID_PAGE_SIZE - 1)] = this.words;
+        this.offsetPages = offsetPages;
+        this.words += length;
+
+        if (id == this.hashes.length) this.hashes = Arrays.copyOf(this.hashes, 2 * id);
+        this.hashes[id] = hash;
+        this.table[pos] = id;
+        if (2 * this.size > this.table.length) this.grow();
+
+        return id;
+    }
+
+    /**
+     * Writes the stored form of the dense memory unit to encoded and returns its length in words.
+     */
+    private int encode(long[] memory, int base) {
+        if (!this.sparse) {
+            System.arraycopy(memory, base, this.encoded, 0, this.width);
+            return this.width;
+        }
+
+        int entryBits = this.childBits + this.stateBits;
+        int count = 0;
+        for (int child = 0; child < this.fieldWord.length; ++child) if (this.getChildMemory(memory, base, child) != 0) ++count;
+        if ((count + this.entriesPerWord - 1) / this.entriesPerWord >= this.width) {
+            this.encoded[0] = -1;
+            System.arraycopy(memory, base, this.encoded, 1, this.width);
+            return 1 + this.width;
+        }
+
+        Arrays.fill(this.encoded, 0L);
+        count = 0;
+        for (int child = 0; child < this.fieldWord.length; ++child) {
+            long state = this.getChildMemory(memory, base, child);
+            if (state == 0) continue;
+            this.encoded[1 + count / this.entriesPerWord] |= (child | (state << this.childBits)) << ((count % this.entriesPerWord) * entryBits);
+            ++count;
+        }
+        this.encoded[0] = count;
+        return 1 + (count + this.entriesPerWord - 1) / this.entriesPerWord;
+    }
+
+    private void grow() {
+        this.table = new int[2 * this.table.length];
+        Arrays.fill(this.table, EMPTY);
+        int mask = this.table.length - 1;
+        for (int id = 0; id < this.size; ++id) {
+            int pos = this.hashes[id] & mask;
+            while (this.table[pos] != EMPTY) pos = (pos + 1) & mask;
+            this.table[pos] = id;
+        }
+    }
+
+    private boolean equalsStored(int id, int length) {
+        long offset = this.offsetPages[id >>> ID_PAGE_SHIFT][id & (ID_PAGE_SIZE - 1)];
+        long[] page = this.wordPages[(int) (offset / WORD_PAGE_SIZE)];
+        int pos = (int) (offset % WORD_PAGE_SIZE);
+        if (this.sparse && page[pos] != this.encoded[0]) return false;
+        for (int i = 0; i < length; ++i) if (page[pos + i] != this.encoded[i]) return false;
+        return true;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the arrays of the table, without object headers.
+     */
+    public synchronized long getAllocatedBytes() {
+        long bytes = 4L * this.table.length + 4L * this.hashes.length;
+        for (long[] page: this.wordPages) if (page != null) bytes += 8L * page.length;
+        for (long[] page: this.offsetPages) if (page != null) bytes += 8L * page.length;
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d %s shared memory units (%.2f longs each, %d dense), %d lookups, %d bytes", this.size,
+                this.sparse ? "sparse or dense" : "dense", this.size == 0 ? 0 : (double) this.words / this.size, this.width,
+                this.lookups, this.getAllocatedBytes());
+    }
+
+}
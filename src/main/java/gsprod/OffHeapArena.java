@@ -0,0 +1,92 @@
+package gsprod;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed amount of memory outside of the Java heap, addressed by a long byte offset. It is made of segments of
+ * 1 GiB (the last one may be shorter), either direct ByteBuffers or memory-mapped segments of a temporary file.
+ * Ints and longs must be accessed at aligned addresses, so that they never straddle segments.
+ * The memory is zeroed on allocation and can be reused, after clear, by consecutive users.
+ */
+public class OffHeapArena {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = (int) (SEGMENT_SIZE - 1);
+
+    private final ByteBuffer[] segments;
+    private final long size;
+
+    /**
+     * Allocates size bytes of direct memory if dir is null or maps a temporary file in dir otherwise.
+     * Note that direct memory is limited by the -XX:MaxDirectMemorySize option of the JVM.
+     */
+    public OffHeapArena(long size, Path dir) {
+        this.size = size & ~7L;
+        int segmentCount = (int) ((this.size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        this.segments = new ByteBuffer[segmentCount];
+
+        try (FileChannel channel = dir == null ? null : this.openTemporaryFile(dir)) {
+            for (int i = 0; i < segmentCount; ++i) {
+                long start = (long) i << SEGMENT_SHIFT;
+                int length = (int) Math.min(SEGMENT_SIZE, this.size - start);
+                if (channel == null) this.segments[i] = ByteBuffer.allocateDirect(length);
+                else {
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+                    this.segments[i] = mapped;
+                }
+                this.segments[i].order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("Can't map the off-heap arena in " + dir + ".", ioex);
+        }
+    }
+
+    /**
+     * Opens a new temporary file in dir. The file is unlinked right away, the mappings stay valid until collected.
+     */
+    private FileChannel openTemporaryFile(Path dir) throws IOException {
+        Path file = Files.createTempFile(dir, "gsq", ".states");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        file.toFile().deleteOnExit();
+        Files.deleteIfExists(file);
+
+        return channel;
+    }
+
+    public long size() {
+        return this.size;
+    }
+
+    public int getInt(long address) {
+        return this.segments[(int) (address >>> SEGMENT_SHIFT)].getInt((int) address & SEGMENT_MASK);
+    }
+
+    public void putInt(long address, int value) {
+        this.segments[(int) (address >>> SEGMENT_SHIFT)].putInt((int) address & SEGMENT_MASK, value);
+    }
+
+    public long getLong(long address) {
+        return this.segments[(int) (address >>> SEGMENT_SHIFT)].getLong((int) address & SEGMENT_MASK);
+    }
+
+    public void putLong(long address, long value) {
+        this.segments[(int) (address >>> SEGMENT_SHIFT)].putLong((int) address & SEGMENT_MASK, value);
+    }
+
+    /**
+     * Zeroes the bytes in [from, to), both must be multiples of 8.
+     */
+    public void clear(long from, long to) {
+        for (long address = from; address < to; address += 8) this.putLong(address, 0);
+    }
+
+}
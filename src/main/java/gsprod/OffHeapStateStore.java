@@ -0,0 +1,126 @@
+package gsprod;
+
+/**
+ * A StateStore that keeps the index, the hashes and the states in an OffHeapArena, so that the product states take
+ * no Java heap at all. The layout is fixed up front from the size of the arena: an open-addressing table of
+ * id + 1 (0 is empty), then the hashes and then the states, width longs each. The capacity is the number of states
+ * that fit in the arena with the table at most 3/4 full; adding a state beyond it is an error.
+ */
+public class OffHeapStateStore implements StateStore {
+
+    private final int width;
+    private final OffHeapArena arena;
+    private final int tableMask;
+    private final long hashesAddress;
+    private final long statesAddress;
+    private final int capacity;
+    private int size;
+
+    private long lookups;
+    private long hits;
+    private long probes;
+    private int maxProbeLength;
+
+    /**
+     * Lays the store out in the arena, clearing the previous contents of its table.
+     */
+    public OffHeapStateStore(int width, OffHeapArena arena) {
+        this.width = width;
+        this.arena = arena;
+
+        // the largest table such that the states filling it half fit in the arena as well
+        long stateBytes = 8L * width + 4;
+        long tableSize = Long.highestOneBit(Math.max(2, arena.size() / (4 + stateBytes / 2)));
+        while (tableSize > 2 && 4 * tableSize + tableSize / 2 * stateBytes > arena.size()) tableSize /= 2;
+        if (tableSize > 1 << 30) tableSize = 1 << 30;
+        long capacity = Math.min((arena.size() - 4 * tableSize) / stateBytes, 3 * tableSize / 4) & ~1L;
+        if (capacity <= 0) throw new RuntimeException("The off-heap budget of " + arena.size() + " bytes is too small.");
+
+        this.tableMask = (int) tableSize - 1;
+        this.capacity = (int) capacity;
+        this.hashesAddress = 4 * tableSize;
+        this.statesAddress = this.hashesAddress + 4 * capacity;
+        arena.clear(0, this.hashesAddress);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public int add(long[] slots, int base) {
+        ++this.lookups;
+        int hash = HeapStateStore.hash(slots, base, this.width);
+        int pos = hash & this.tableMask;
+        int probeLength = 0;
+
+        int entry;
+        while ((entry = this.arena.getInt(4L * pos)) != 0) {
+            ++probeLength;
+            int id = entry - 1;
+            if (this.arena.getInt(this.hashesAddress + 4L * id) == hash && this.equalsStored(id, slots, base)) {
+                ++this.hits;
+                this.recordProbes(probeLength);
+                return id;
+            }
+            pos = (pos + 1) & this.tableMask;
+        }
+        this.recordProbes(probeLength);
+
+        if (this.size == this.capacity)
+            throw new RuntimeException("The off-heap state store is full: " + this.arena.size() + " bytes hold "
+                    + this.capacity + " states of " + this.width + " longs.");
+
+        int id = this.size++;
+        long address = this.statesAddress + 8L * this.width * id;
+        for (int i = 0; i < this.width; ++i) this.arena.putLong(address + 8L * i, slots[base + i]);
+        this.arena.putInt(this.hashesAddress + 4L * id, hash);
+        this.arena.putInt(4L * pos, id + 1);
+
+        return id;
+    }
+
+    @Override
+    public void get(int id, long[] slots, int base) {
+        long address = this.statesAddress + 8L * this.width * id;
+        for (int i = 0; i < this.width; ++i) slots[base + i] = this.arena.getLong(address + 8L * i);
+    }
+
+    private boolean equalsStored(int id, long[] slots, int base) {
+        long address = this.statesAddress + 8L * this.width * id;
+        for (int i = 0; i < this.width; ++i) if (this.arena.getLong(address + 8L * i) != slots[base + i]) return false;
+        return true;
+    }
+
+    private void recordProbes(int probeLength) {
+        this.probes += probeLength;
+        if (probeLength > this.maxProbeLength) this.maxProbeLength = probeLength;
+    }
+
+    /**
+     * Returns the size of the part of the arena used by the store.
+     */
+    @Override
+    public long getAllocatedBytes() {
+        return this.statesAddress + 8L * this.width * this.capacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d off-heap states (%d longs each), %d lookups: %d hits, %d misses, " +
+                        "avg probe length %.2f, max probe length %d", this.size, this.capacity, this.width, this.lookups,
+                this.hits, this.lookups - this.hits, this.lookups == 0 ? 0 : (double) this.probes / this.lookups,
+                this.maxProbeLength);
+    }
+
+}
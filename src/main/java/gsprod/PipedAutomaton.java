@@ -0,0 +1,381 @@
+package gsprod;
+
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The product of a composition level that is published state by state while it is explored, so that the parent level
+ * can explore at the same time. The producer runs a breadth-first exploration like SequentialExplorer and closes a
+ * state once all its transitions are added; the transitions of a closed state never change. The consumers ask for the
+ * transitions of a state (firstGroup, lastGroup, findGroup, firstTransition, lastTransition) and wait until it is
+ * closed. The arrays are grown by copying and kept together in a Storage published by a volatile write before the
+ * number of closed states, and the readers load the storage after the number of closed states, so they need no locks.
+ * The alphabet is not known until the exploration ends, getLabelSet returns a superset of it and hasLabel waits until a
+ * label is seen or the product is complete.
+ */
+public class PipedAutomaton extends CompiledAutomaton {
+
+    private final int stateBound;
+    private final ProductLevel level;
+
+    private int transitionCount;
+    private int groupCount;
+
+    private volatile Storage storage;
+    private volatile int closed;
+    private volatile BitSet seenLabels;
+    private volatile boolean complete;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+    private volatile int waiters;
+
+    /**
+     * Makes the product of the level, which is produced by produce.
+     */
+    public PipedAutomaton(String name, ProductLevel level) {
+        super(name, potentialLabels(level));
+        this.level = level;
+        this.stateBound = stateBound(level);
+        this.storage = new Storage(new int[64], new int[64], new int[64], new int[64], new int[64], new int[64]);
+        this.seenLabels = new BitSet();
+    }
+
+    /**
+     * A product has the labels of its operands and the epsilon of the transitions from the dummy initial state.
+     */
+    private static BitSet potentialLabels(ProductLevel level) {
+        BitSet labels = (BitSet) level.getRoot().getLabelSet().clone();
+        for (CompiledAutomaton child: level.getChildren()) labels.or(child.getLabelSet());
+        labels.set(level.getEpsilon());
+        return labels;
+    }
+
+    /**
+     * The dummy initial state and the states (root state, active child, active child's state, memory unit).
+     */
+    private static int stateBound(ProductLevel level) {
+        double bound = level.getRoot().getStateBound() * (double) level.getChildren().length;
+        int maxChildStates = 1;
+        for (CompiledAutomaton child: level.getChildren()) {
+            bound *= child.getStateBound();
+            maxChildStates = Math.max(maxChildStates, child.getStateBound());
+        }
+        bound *= maxChildStates;
+        return (int) Math.min(Integer.MAX_VALUE, bound + 1);
+    }
+
+    /**
+     * Explores the level and publishes its states; to be run by the producer thread. A failure is passed to the
+     * consumers.
+     */
+    public void produce() {
+        try {
+            int width = this.level.getWidth();
+            HeapStateStore visited = new HeapStateStore(width);
+            long[] curr = new long[width];
+            long[] succ = new long[width];
+            long[][] packed = { new long[16] };
+            int[] packedCount = { 0 };
+
+            // state i of the store is state i + 1 of the product; 0 is the dummy initial state
+            for (int i = 0; i < this.level.getInitialCount(); ++i) {
+                this.level.encodeInitial(i, succ, 0);
+                packed[0][packedCount[0]++] = ((long) this.level.getEpsilon() << 32) | (visited.add(succ, 0) + 1);
+            }
+            this.close(packed[0], packedCount[0]);
+
+            for (int currId = 0; currId < visited.size() && !this.cancelled; ++currId) {
+                visited.get(currId, curr, 0);
+                packedCount[0] = 0;
+                this.level.expand(curr, succ, (label, slots, base) -> {
+                    if (packedCount[0] == packed[0].length) packed[0] = Arrays.copyOf(packed[0], 2 * packedCount[0]);
+                    packed[0][packedCount[0]++] = ((long) label << 32) | (visited.add(slots, base) + 1);
+                });
+                this.close(packed[0], packedCount[0]);
+            }
+            if (this.cancelled) this.failure = new RuntimeException("The producer was cancelled.");
+            else this.complete = true;
+        } catch (RuntimeException | Error ex) {
+            this.failure = ex;
+        }
+
+        this.wakeUp();
+    }
+
+    /**
+     * Makes the producer stop at the next state, e.g., when the consumer failed.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Appends the next state with the given (label << 32 | target) transitions and publishes it.
+     */
+    private void close(long[] packed, int count) {
+        Arrays.sort(packed, 0, count);
+        int state = this.closed;
+        Storage storage = this.storage.ensureCapacity(state + 2, this.transitionCount + count, this.groupCount + count + 1);
+
+        BitSet newLabels = null;
+        for (int i = 0; i < count; ++i) {
+            int label = (int) (packed[i] >>> 32);
+            int trans = this.transitionCount + i;
+            storage.labels[trans] = label;
+            storage.targets[trans] = (int) packed[i];
+            if (i == 0 || label != storage.labels[trans - 1]) {
+                storage.groupLabels[this.groupCount] = label;
+                storage.groupStarts[this.groupCount] = trans;
+                ++this.groupCount;
+                if (!this.seenLabels.get(label)) {
+                    if (newLabels == null) newLabels = (BitSet) this.seenLabels.clone();
+                    newLabels.set(label);
+                }
+            }
+        }
+        this.transitionCount += count;
+        storage.groupStarts[this.groupCount] = this.transitionCount;
+        storage.offsets[state + 1] = this.transitionCount;
+        storage.groupOffsets[state + 1] = this.groupCount;
+
+        if (newLabels != null) this.seenLabels = newLabels;
+        this.storage = storage;
+        this.closed = state + 1;
+        if (this.waiters > 0) this.wakeUp();
+    }
+
+    private synchronized void wakeUp() {
+        this.notifyAll();
+    }
+
+    /**
+     * Waits until the state is closed, the product is complete (then the state doesn't exist) or the producer failed.
+     */
+    private void awaitState(int state) {
+        if (state < this.closed) return;
+        this.await(() -> state < this.closed);
+        if (state >= this.closed) throw new RuntimeException("No state " + state + " in the piped product " + this.getName() + ".");
+    }
+
+    private void await(BooleanSupplier done) {
+        synchronized (this) {
+            ++this.waiters;
+            try {
+                while (!done.getAsBoolean() && !this.complete && this.failure == null) this.wait();
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the piped product " + this.getName() + ".", iex);
+            } finally {
+                --this.waiters;
+            }
+        }
+        if (this.failure != null && !done.getAsBoolean())
+            throw new RuntimeException("The producer of the piped product " + this.getName() + " failed.", this.failure);
+    }
+
+    /**
+     * Returns true if the product has a transition with the label, waiting until such a transition is produced or the
+     * product is complete.
+     */
+    @Override
+    public boolean hasLabel(int label) {
+        boolean complete = this.complete;
+        if (this.seenLabels.get(label)) return true;
+        if (complete || !super.getLabelSet().get(label)) return false;
+        this.await(() -> this.seenLabels.get(label));
+        return this.seenLabels.get(label);
+    }
+
+    /**
+     * Returns true if the label was already seen, without waiting.
+     */
+    public boolean hasSeenLabel(int label) {
+        return this.seenLabels.get(label);
+    }
+
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Waits until the product is complete.
+     */
+    public void awaitComplete() {
+        this.await(() -> this.complete);
+    }
+
+    @Override
+    public int getStateBound() {
+        return this.stateBound;
+    }
+
+    /**
+     * Returns the number of states, waiting until the product is complete.
+     */
+    @Override
+    public int getStateCount() {
+        this.awaitComplete();
+        return this.closed;
+    }
+
+    /**
+     * Returns the number of transitions, waiting until the product is complete.
+     */
+    @Override
+    public int getTransitionCount() {
+        this.awaitComplete();
+        return this.storage.offsets[this.closed];
+    }
+
+    @Override
+    public int firstTransition(int state) {
+        this.awaitState(state);
+        return this.storage.offsets[state];
+    }
+
+    @Override
+    public int lastTransition(int state) {
+        this.awaitState(state);
+        return this.storage.offsets[state + 1];
+    }
+
+    @Override
+    public int getLabel(int transition) {
+        return this.storage.labels[transition];
+    }
+
+    @Override
+    public int getTarget(int transition) {
+        return this.storage.targets[transition];
+    }
+
+    @Override
+    public int firstGroup(int state) {
+        this.awaitState(state);
+        return this.storage.groupOffsets[state];
+    }
+
+    @Override
+    public int lastGroup(int state) {
+        this.awaitState(state);
+        return this.storage.groupOffsets[state + 1];
+    }
+
+    @Override
+    public int getGroupLabel(int group) {
+        return this.storage.groupLabels[group];
+    }
+
+    @Override
+    public int groupStart(int group) {
+        return this.storage.groupStarts[group];
+    }
+
+    @Override
+    public int groupEnd(int group) {
+        return this.storage.groupStarts[group + 1];
+    }
+
+    @Override
+    public int findGroup(int state, int label) {
+        this.awaitState(state);
+        Storage storage = this.storage;
+        int low = storage.groupOffsets[state];
+        int high = storage.groupOffsets[state + 1] - 1;
+        int[] groupLabels = storage.groupLabels;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midLabel = groupLabels[mid];
+            if (midLabel < label) low = mid + 1;
+            else if (midLabel > label) high = mid - 1;
+            else return mid;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String getStateName(int state) {
+        return String.valueOf(state);
+    }
+
+    @Override
+    public int getStateId(String state) {
+        try {
+            int id = Integer.parseInt(state);
+            return id >= 0 && id < this.closed ? id : -1;
+        } catch (NumberFormatException nfex) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        Storage storage = this.storage;
+        return 4L * (storage.offsets.length + storage.groupOffsets.length + 2L * storage.labels.length
+                + 2L * storage.groupLabels.length);
+    }
+
+    @Override
+    public void write(DataOutputStream out) {
+        throw new RuntimeException("A piped product cannot be written.");
+    }
+
+    /**
+     * The arrays of the closed states in the layout of CompiledAutomaton. The producer fills their free ends in place;
+     * a full array is replaced by a larger copy in a new storage, so the states closed before stay readable in the old
+     * one.
+     */
+    private static final class Storage {
+
+        final int[] offsets;
+        final int[] labels;
+        final int[] targets;
+        final int[] groupOffsets;
+        final int[] groupLabels;
+        final int[] groupStarts;
+
+        Storage(int[] offsets, int[] labels, int[] targets, int[] groupOffsets, int[] groupLabels, int[] groupStarts) {
+            this.offsets = offsets;
+            this.labels = labels;
+            this.targets = targets;
+            this.groupOffsets = groupOffsets;
+            this.groupLabels = groupLabels;
+            this.groupStarts = groupStarts;
+        }
+
+        /**
+         * Returns this storage if it has room for the given numbers of offsets, transitions and groups, or a larger copy.
+         */
+        Storage ensureCapacity(int offsetCount, int transitionCount, int groupCount) {
+            if (offsetCount <= this.offsets.length && transitionCount <= this.labels.length
+                    && groupCount <= this.groupLabels.length) return this;
+
+            int[] offsets = this.offsets;
+            int[] groupOffsets = this.groupOffsets;
+            if (offsetCount > offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+                groupOffsets = Arrays.copyOf(groupOffsets, 2 * groupOffsets.length);
+            }
+            int[] labels = this.labels;
+            int[] targets = this.targets;
+            if (transitionCount > labels.length) {
+                int length = Math.max(2 * labels.length, transitionCount);
+                labels = Arrays.copyOf(labels, length);
+                targets = Arrays.copyOf(targets, length);
+            }
+            int[] groupLabels = this.groupLabels;
+            int[] groupStarts = this.groupStarts;
+            if (groupCount > groupLabels.length) {
+                int length = Math.max(2 * groupLabels.length, groupCount);
+                groupLabels = Arrays.copyOf(groupLabels, length);
+                groupStarts = Arrays.copyOf(groupStarts, length);
+            }
+            return new Storage(offsets, labels, targets, groupOffsets, groupLabels, groupStarts);
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package gsprod;
+
+import java.util.Arrays;
+
+/**
+ * Collects the transitions of a product whose states are numbered densely from 0, the initial state being 0.
+ * The transitions are stored as (source, label, target) triples of ints; names are only made by toAutomaton.
+ */
+public class ProductBuilder implements ProductSink {
+
+    private int stateCount;
+    private int[] transitions;
+    private int transitionCount;
+
+    public ProductBuilder() {
+        this.transitions = new int[3 * 64];
+    }
+
+    public int getStateCount() {
+        return this.stateCount;
+    }
+
+    @Override
+    public void setStateCount(int stateCount) {
+        this.stateCount = stateCount;
+    }
+
+    public int getTransitionCount() {
+        return this.transitionCount;
+    }
+
+    public int getSource(int transition) {
+        return this.transitions[3 * transition];
+    }
+
+    public int getLabel(int transition) {
+        return this.transitions[3 * transition + 1];
+    }
+
+    public int getTarget(int transition) {
+        return this.transitions[3 * transition + 2];
+    }
+
+    @Override
+    public void addTransition(int source, int label, int target) {
+        if (this.transitions.length < 3 * (this.transitionCount + 1))
+            this.transitions = Arrays.copyOf(this.transitions, 2 * this.transitions.length);
+        int pos = 3 * this.transitionCount++;
+        this.transitions[pos] = source;
+        this.transitions[pos + 1] = label;
+        this.transitions[pos + 2] = target;
+    }
+
+    /**
+     * Adds count transitions given as consecutive (source, label, target) triples.
+     */
+    @Override
+    public void addTransitions(int[] triples, int count) {
+        int length = this.transitions.length;
+        while (length < 3 * (this.transitionCount + count)) length *= 2;
+        if (length > this.transitions.length) this.transitions = Arrays.copyOf(this.transitions, length);
+        System.arraycopy(triples, 0, this.transitions, 3 * this.transitionCount, 3 * count);
+        this.transitionCount += count;
+    }
+
+    /**
+     * Adds the transitions to sink and forgets them.
+     */
+    public void drainTo(ProductSink sink) {
+        sink.addTransitions(this.transitions, this.transitionCount);
+        this.transitionCount = 0;
+    }
+
+    /**
+     * Builds the product automaton with the given name and states named "0", "1", ...
+     */
+    public Automaton toAutomaton(ActionTable actions, String name) {
+        Automaton product = new Automaton(name);
+        String[] names = new String[this.stateCount];
+        for (int i = 0; i < this.stateCount; ++i) {
+            names[i] = String.valueOf(i);
+            product.addState(names[i]);
+        }
+
+        for (int i = 0; i < this.transitionCount; ++i) {
+            int pos = 3 * i;
+            product.addTransition(names[this.transitions[pos]], actions.getName(this.transitions[pos + 1]),
+                    names[this.transitions[pos + 2]]);
+        }
+
+        return product;
+    }
+
+}
@@ -0,0 +1,14 @@
+package gsprod;
+
+/**
+ * An exploration engine of the product of a single level of the composition.
+ */
+public interface ProductExplorer {
+
+    /**
+     * Explores the states of the product reachable from its dummy initial state 0 and reports them to product,
+     * numbered densely; the initial state of the level with the i-th child active need not be i + 1.
+     */
+    void explore(ProductLevel level, ProductSink product, boolean verbose);
+
+}
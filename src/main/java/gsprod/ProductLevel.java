@@ -0,0 +1,258 @@
+package gsprod;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * The data of one composition level of the product that is computed once, before the exploration: the compiled root
+ * and children, the encoding of product states and the partitions of labels into local and synchronized ones, kept
+ * as bitsets indexed by label id. It also defines the product by its initial states and the successor function over
+ * encoded states, which is shared by all the explorers. A ProductLevel is immutable, except for the thread-safe
+ * MemoryTable of the codec if the memory units are shared, so it can be used by many threads.
+ */
+public class ProductLevel {
+
+    /**
+     * Where the memory units of the product states are kept.
+     */
+    public enum MemoryLayout {
+        /** In every state. */
+        INLINE,
+        /** In a MemoryTable if the level is wide and this makes the states narrower, otherwise in every state. */
+        NARROWEST,
+        /** In a MemoryTable. */
+        SHARED
+    }
+
+    private final ActionTable actions;
+    private final CompiledAutomaton root;
+    private final CompiledAutomaton[] children;
+    private final GSQStateCodec codec;
+    private final BitSet rootLocalLabels;
+    private final BitSet undecidedRootLabels;
+    private final BitSet[] childLocalLabels;
+    private final int epsilon;
+
+    public ProductLevel(Automaton root, ArrayList<Automaton> children, ActionTable actions) {
+        this(root, children, actions, MemoryLayout.NARROWEST);
+    }
+
+    public ProductLevel(Automaton root, ArrayList<Automaton> children, ActionTable actions, MemoryLayout memory) {
+        this(CompiledAutomaton.compile(root, actions), compileAll(children, actions), actions, memory);
+    }
+
+    public ProductLevel(CompiledAutomaton root, CompiledAutomaton[] children, ActionTable actions) {
+        this(root, children, actions, MemoryLayout.NARROWEST);
+    }
+
+    /**
+     * Makes the level with the memory units of the states kept as given; the shared ones are hash-consed in a
+     * MemoryTable.
+     */
+    public ProductLevel(CompiledAutomaton root, CompiledAutomaton[] children, ActionTable actions, MemoryLayout memory) {
+        this.actions = actions;
+        this.root = root;
+        this.children = children;
+        this.codec = newCodec(this.root, this.children, memory);
+        this.epsilon = actions.intern("epsilon");
+
+        // a label of the root is local unless it synchronizes with some child; the alphabet of a piped child is known
+        // only when it is complete, so the labels that may synchronize only with piped children are decided later
+        BitSet childrenSyncLabels = new BitSet();
+        BitSet pipedSyncLabels = new BitSet();
+        for (CompiledAutomaton child: this.children)
+            (child instanceof PipedAutomaton ? pipedSyncLabels : childrenSyncLabels).or(child.getLabelSet());
+        childrenSyncLabels.and(actions.getSyncFlags());
+        pipedSyncLabels.and(actions.getSyncFlags());
+        this.rootLocalLabels = (BitSet) this.root.getLabelSet().clone();
+        this.rootLocalLabels.andNot(childrenSyncLabels);
+        this.rootLocalLabels.andNot(pipedSyncLabels);
+        this.undecidedRootLabels = (BitSet) this.root.getLabelSet().clone();
+        this.undecidedRootLabels.and(pipedSyncLabels);
+        this.undecidedRootLabels.andNot(childrenSyncLabels);
+
+        // a label of a child is local unless it synchronizes with the root
+        BitSet rootSyncLabels = (BitSet) this.root.getLabelSet().clone();
+        rootSyncLabels.and(actions.getSyncFlags());
+        this.childLocalLabels = new BitSet[this.children.length];
+        for (int i = 0; i < this.children.length; ++i) {
+            this.childLocalLabels[i] = (BitSet) this.children[i].getLabelSet().clone();
+            this.childLocalLabels[i].andNot(rootSyncLabels);
+        }
+    }
+
+    /**
+     * The NARROWEST layout shares the memory units of a level with at least MemoryTable.SPARSE_BRANCHING children if
+     * their sparse units stored once take less than their dense forms in every state, i.e., the states get narrower.
+     */
+    private static GSQStateCodec newCodec(CompiledAutomaton root, CompiledAutomaton[] children, MemoryLayout memory) {
+        GSQStateCodec inline = new GSQStateCodec(root, children);
+        if (memory == MemoryLayout.INLINE
+                || memory == MemoryLayout.NARROWEST && children.length < MemoryTable.SPARSE_BRANCHING) return inline;
+
+        GSQStateCodec shared = new GSQStateCodec(root, children, new MemoryTable(children));
+        return memory == MemoryLayout.SHARED || shared.getWidth() < inline.getWidth() ? shared : inline;
+    }
+
+    private static CompiledAutomaton[] compileAll(ArrayList<Automaton> automata, ActionTable actions) {
+        CompiledAutomaton[] compiled = new CompiledAutomaton[automata.size()];
+        for (int i = 0; i < automata.size(); ++i) compiled[i] = CompiledAutomaton.compile(automata.get(i), actions);
+        return compiled;
+    }
+
+    public ActionTable getActions() {
+        return this.actions;
+    }
+
+    public CompiledAutomaton getRoot() {
+        return this.root;
+    }
+
+    public CompiledAutomaton[] getChildren() {
+        return this.children;
+    }
+
+    public GSQStateCodec getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * Returns true if the label of the root synchronizes with no child. For a label that may only synchronize with
+     * piped children, this waits until one of them produces the label or all of them are complete.
+     */
+    public boolean isRootLocal(int label) {
+        if (this.rootLocalLabels.get(label)) return true;
+        if (!this.undecidedRootLabels.get(label)) return false;
+
+        for (CompiledAutomaton child: this.children)
+            if (child instanceof PipedAutomaton && ((PipedAutomaton) child).hasSeenLabel(label)) return false;
+        for (CompiledAutomaton child: this.children)
+            if (child instanceof PipedAutomaton && ((PipedAutomaton) child).hasLabel(label)) return false;
+        return true;
+    }
+
+    public boolean isChildLocal(int child, int label) {
+        return this.childLocalLabels[child].get(label);
+    }
+
+    /**
+     * Returns the label of the transitions from the dummy initial state of the product to the initial states.
+     */
+    public int getEpsilon() {
+        return this.epsilon;
+    }
+
+    public int getWidth() {
+        return this.codec.getWidth();
+    }
+
+    public int[] getFieldStarts() {
+        return this.codec.getFieldStarts();
+    }
+
+    public int getHeadFieldCount() {
+        return this.codec.getHeadFieldCount();
+    }
+
+    /**
+     * Returns the number of initial states, one per child.
+     */
+    public int getInitialCount() {
+        return this.children.length;
+    }
+
+    /**
+     * Encodes to slots at [base, base + width) the initial state in which the i-th child is active.
+     */
+    public void encodeInitial(int i, long[] slots, int base) {
+        int[] initMem = new int[this.children.length];
+        for (int j = 0; j < this.children.length; ++j) initMem[j] = this.children[j].getInitial();
+        this.codec.encode(new GSQState(this.root, this.children, i, initMem), slots, base);
+    }
+
+    /**
+     * Passes to out all the successors of the encoded state curr together with the labels of the transitions leading
+     * to them; a successor is passed once per transition. The successors are built in succ, which must have at
+     * least width longs and is overwritten between the calls of out.
+     */
+    public void expand(long[] curr, long[] succ, SuccessorConsumer out) {
+        int width = this.codec.getWidth();
+        int activeChild = this.codec.getActiveChild(curr, 0);
+        CompiledAutomaton child = this.children[activeChild];
+        int childState = this.codec.getActiveChildState(curr, 0);
+        int rootState = this.codec.getRootState(curr, 0);
+
+        // fire all the local actions of the child
+        for (int group = child.firstGroup(childState); group < child.lastGroup(childState); ++group) {
+            int label = child.getGroupLabel(group);
+            if (!this.isChildLocal(activeChild, label)) continue;
+
+            for (int trans = child.groupStart(group); trans < child.groupEnd(group); ++trans) {
+                System.arraycopy(curr, 0, succ, 0, width);
+                this.codec.setActiveChildState(succ, 0, child.getTarget(trans));
+                out.accept(label, succ, 0);
+            }
+        }
+
+        // fire all the local actions of the root and synchronized ones, the groups of labels of the root and
+        // of the child are both sorted, so the matching child group of a synchronized root group is found by a merge
+        int childGroup = child.firstGroup(childState);
+        MemoryTable memories = this.codec.getMemories();
+        long[] memory = null;
+        long[] nextMemory = null;
+
+        for (int rootGroup = this.root.firstGroup(rootState); rootGroup < this.root.lastGroup(rootState); ++rootGroup) {
+            int rootLabel = this.root.getGroupLabel(rootGroup);
+
+            // local transitions of the root
+            if (this.isRootLocal(rootLabel)) {
+                for (int rootTrans = this.root.groupStart(rootGroup); rootTrans < this.root.groupEnd(rootGroup); ++rootTrans) {
+                    System.arraycopy(curr, 0, succ, 0, width);
+                    this.codec.setRootState(succ, 0, this.root.getTarget(rootTrans));
+                    out.accept(rootLabel, succ, 0);
+                }
+                continue;
+            }
+
+            // synchronized transitions
+            while (childGroup < child.lastGroup(childState) && child.getGroupLabel(childGroup) < rootLabel) ++childGroup;
+            if (childGroup == child.lastGroup(childState) || child.getGroupLabel(childGroup) != rootLabel) continue;
+
+            for (int rootTrans = this.root.groupStart(rootGroup); rootTrans < this.root.groupEnd(rootGroup); ++rootTrans) {
+                for (int childTrans = child.groupStart(childGroup); childTrans < child.groupEnd(childGroup); ++childTrans) {
+
+                    // update root and memory (this is common for all targets of the joint action)
+                    System.arraycopy(curr, 0, succ, 0, width);
+                    this.codec.setRootState(succ, 0, this.root.getTarget(rootTrans));
+                    if (memories == null) {
+                        this.codec.setChildMemory(succ, 0, activeChild, child.getTarget(childTrans));
+
+                        // wake up a child from memory and register transition
+                        for (int nextChild = 0; nextChild < this.children.length; ++nextChild) {
+                            this.codec.setActiveChild(succ, 0, nextChild);
+                            this.codec.setActiveChildState(succ, 0, this.codec.getChildMemory(succ, 0, nextChild));
+                            out.accept(rootLabel, succ, 0);
+                        }
+                        continue;
+                    }
+
+                    // the new version of the shared memory unit, interned once for all the children woken up
+                    if (memory == null) {
+                        memory = new long[memories.getWidth()];
+                        nextMemory = new long[memories.getWidth()];
+                        memories.get(this.codec.getMemoryId(curr, 0), memory, 0);
+                    }
+                    System.arraycopy(memory, 0, nextMemory, 0, memory.length);
+                    memories.setChildMemory(nextMemory, 0, activeChild, child.getTarget(childTrans));
+                    this.codec.setMemoryId(succ, 0, memories.intern(nextMemory, 0));
+                    for (int nextChild = 0; nextChild < this.children.length; ++nextChild) {
+                        this.codec.setActiveChild(succ, 0, nextChild);
+                        this.codec.setActiveChildState(succ, 0, memories.getChildMemory(nextMemory, 0, nextChild));
+                        out.accept(rootLabel, succ, 0);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,384 @@
+package gsprod;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the product engine that are not part of the net itself, e.g., where to keep the visited states.
+ */
+public class ProductSettings {
+
+    public enum Engine {
+        /** The single-threaded BFS. */
+        SEQUENTIAL,
+        /** The level-synchronous parallel BFS. */
+        PARALLEL,
+        /** The asynchronous work-stealing exploration with a lock-free state store. */
+        STEALING,
+        /** The exploration sharded by the active child, one thread per child. */
+        SHARDED,
+        /** The single-threaded BFS with the visited states in sorted files on disk. */
+        EXTERNAL,
+        /** The single-threaded BFS keeping only the last layers of states in memory. */
+        FRONTIER
+    }
+
+    private Engine engine = Engine.SEQUENTIAL;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int subtreeThreads = 1;
+    private boolean pipelined;
+    private boolean lazy;
+    private boolean sharedMemory;
+    private boolean treeCompression;
+    private long bitstateBytes;
+    private int bitstateHashes = 3;
+    private long hashCompactionBytes;
+    private long stateCacheBytes;
+    private StateCache.Policy cachePolicy = StateCache.Policy.LRU;
+    private long externalBufferBytes = 64L << 20;
+    private Path externalDir;
+    private int frontierLayers = 1;
+    private long heapBudget;
+    private Path spillDir;
+    private int log2TableSize = 24;
+    private long offHeapBudget;
+    private Path offHeapDir;
+    private OffHeapArena offHeapArena;
+
+    public Engine getEngine() {
+        return this.engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Sets the number of threads of the parallel engines, by default the number of available processors.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getSubtreeThreads() {
+        return this.subtreeThreads;
+    }
+
+    /**
+     * Sets the number of threads reducing independent subtrees of the net at the same time, by default 1. It adds to
+     * the threads of the engine, which explores every level.
+     */
+    public void setSubtreeThreads(int subtreeThreads) {
+        this.subtreeThreads = subtreeThreads;
+    }
+
+    public boolean isPipelined() {
+        return this.pipelined;
+    }
+
+    /**
+     * If pipelined then all the levels of the composition tree are explored at the same time, each level reading the
+     * products of its children while they are produced. The levels below the top one use their own threads and the
+     * sequential exploration, the subtree threads and the heap budget don't apply.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isLazy() {
+        return this.lazy;
+    }
+
+    /**
+     * If lazy then the intermediate products are not built: the product of the whole tree is explored at once by the
+     * sequential BFS, pulling the successors through the tree (see LazyProduct).
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isSharedMemory() {
+        return this.sharedMemory;
+    }
+
+    /**
+     * If sharedMemory then the memory units of the product states are hash-consed in a MemoryTable of the level instead
+     * of being stored in every state (not used by the lazy product). Otherwise only the wide levels share them, in the
+     * sparse form, when this makes the states narrower.
+     */
+    public void setSharedMemory(boolean sharedMemory) {
+        this.sharedMemory = sharedMemory;
+    }
+
+    /**
+     * Returns the memory layout of the product levels: SHARED if sharedMemory, otherwise NARROWEST, except for the
+     * parallel engines, which keep the memory units in the states so that their threads don't wait for the
+     * synchronized MemoryTable, and the explorations in bounded memory (the external and frontier engines, the
+     * approximate sets, the state cache and the off-heap store), which would otherwise keep every memory unit in the
+     * table on the heap.
+     */
+    public ProductLevel.MemoryLayout getMemoryLayout() {
+        if (this.sharedMemory) return ProductLevel.MemoryLayout.SHARED;
+        if (this.isApproximate() || this.stateCacheBytes > 0 || this.offHeapBudget > 0)
+            return ProductLevel.MemoryLayout.INLINE;
+        switch (this.engine) {
+            case PARALLEL:
+            case STEALING:
+            case SHARDED:
+            case EXTERNAL:
+            case FRONTIER:
+                return ProductLevel.MemoryLayout.INLINE;
+            default:
+                return ProductLevel.MemoryLayout.NARROWEST;
+        }
+    }
+
+    public boolean isTreeCompression() {
+        return this.treeCompression;
+    }
+
+    /**
+     * If treeCompression then the sequential engine keeps the visited states in a TreeStateStore.
+     */
+    public void setTreeCompression(boolean treeCompression) {
+        this.treeCompression = treeCompression;
+    }
+
+    public long getStateCacheBytes() {
+        return this.stateCacheBytes;
+    }
+
+    /**
+     * If bytes is positive then the topmost level is explored by the CachingExplorer, which keeps at most about bytes
+     * of visited states and explores again the states it forgot.
+     */
+    public void setStateCacheBytes(long stateCacheBytes) {
+        this.stateCacheBytes = stateCacheBytes;
+    }
+
+    public StateCache.Policy getCachePolicy() {
+        return this.cachePolicy;
+    }
+
+    /**
+     * Sets the eviction policy of the state cache, by default LRU.
+     */
+    public void setCachePolicy(StateCache.Policy cachePolicy) {
+        this.cachePolicy = cachePolicy;
+    }
+
+    public long getBitstateBytes() {
+        return this.bitstateBytes;
+    }
+
+    /**
+     * If bytes is positive then the topmost level of the composition is explored by the ApproximateExplorer with a
+     * BitstateSet of the given size.
+     */
+    public void setBitstateBytes(long bitstateBytes) {
+        this.bitstateBytes = bitstateBytes;
+    }
+
+    public int getBitstateHashes() {
+        return this.bitstateHashes;
+    }
+
+    /**
+     * Sets the number of hashes per state of the BitstateSet, by default 3.
+     */
+    public void setBitstateHashes(int bitstateHashes) {
+        this.bitstateHashes = bitstateHashes;
+    }
+
+    public long getHashCompactionBytes() {
+        return this.hashCompactionBytes;
+    }
+
+    /**
+     * If bytes is positive then the topmost level of the composition is explored by the ApproximateExplorer with a
+     * HashCompactionSet of the given size.
+     */
+    public void setHashCompactionBytes(long hashCompactionBytes) {
+        this.hashCompactionBytes = hashCompactionBytes;
+    }
+
+    /**
+     * Returns true if the topmost level is explored with an ApproximateStateSet, so it may miss states.
+     */
+    public boolean isApproximate() {
+        return this.bitstateBytes > 0 || this.hashCompactionBytes > 0;
+    }
+
+    /**
+     * Returns a new approximate visited set for states of the given width, a BitstateSet if both are set.
+     */
+    public ApproximateStateSet newApproximateStateSet(int width) {
+        if (this.bitstateBytes > 0) return new BitstateSet(width, this.bitstateBytes, this.bitstateHashes);
+        return new HashCompactionSet(width, this.hashCompactionBytes);
+    }
+
+    public long getExternalBufferBytes() {
+        return this.externalBufferBytes;
+    }
+
+    /**
+     * Sets the number of bytes of transitions the external engine sorts in memory before writing a run, by default
+     * 64 MiB.
+     */
+    public void setExternalBufferBytes(long externalBufferBytes) {
+        this.externalBufferBytes = externalBufferBytes;
+    }
+
+    public Path getExternalDir() {
+        return this.externalDir;
+    }
+
+    /**
+     * Sets the directory of the files of the external engine and of the layers forgotten by the frontier engine, by
+     * default the temporary directory.
+     */
+    public void setExternalDir(Path externalDir) {
+        this.externalDir = externalDir;
+    }
+
+    public int getFrontierLayers() {
+        return this.frontierLayers;
+    }
+
+    /**
+     * Sets the number of closed BFS layers kept by the frontier engine besides the current and the next one, by
+     * default 1; see FrontierExplorer.
+     */
+    public void setFrontierLayers(int frontierLayers) {
+        this.frontierLayers = frontierLayers;
+    }
+
+    public long getHeapBudget() {
+        return this.heapBudget;
+    }
+
+    /**
+     * If the budget is positive then the intermediate products of the composition tree are kept within budget bytes,
+     * see CompositionScheduler.
+     */
+    public void setHeapBudget(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    public Path getSpillDir() {
+        return this.spillDir;
+    }
+
+    /**
+     * Sets the directory of the intermediate products spilled to disk, by default the temporary directory.
+     */
+    public void setSpillDir(Path spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    public int getLog2TableSize() {
+        return this.log2TableSize;
+    }
+
+    /**
+     * Sets the number of buckets of the fixed-size concurrent state table of the work-stealing engine to 2^log2.
+     */
+    public void setLog2TableSize(int log2TableSize) {
+        this.log2TableSize = log2TableSize;
+    }
+
+    public ProductExplorer newExplorer() {
+        switch (this.engine) {
+            case PARALLEL: return new LevelParallelExplorer(this.threads);
+            case STEALING: return new WorkStealingExplorer(this.threads, this.log2TableSize);
+            case SHARDED: return new ShardedExplorer();
+            case EXTERNAL: return new ExternalExplorer(this.externalBufferBytes, this.externalDir);
+            case FRONTIER: return new FrontierExplorer(this, this.frontierLayers);
+            default: return new SequentialExplorer(this);
+        }
+    }
+
+    /**
+     * Returns the explorer of the topmost level of the composition, whose product is not explored any further: the
+     * CachingExplorer if there is a state cache, the ApproximateExplorer if the settings are approximate, otherwise
+     * the engine.
+     */
+    public ProductExplorer newTopExplorer() {
+        if (this.stateCacheBytes > 0) return new CachingExplorer(this.stateCacheBytes, this.cachePolicy);
+        return this.isApproximate() ? new ApproximateExplorer(this) : this.newExplorer();
+    }
+
+    public long getOffHeapBudget() {
+        return this.offHeapBudget;
+    }
+
+    /**
+     * If the budget is positive then the visited states are kept off the Java heap, in at most budget bytes.
+     * Only the sequential engine uses the off-heap store, and only when the subtrees are reduced one at a time.
+     */
+    public void setOffHeapBudget(long offHeapBudget) {
+        this.offHeapBudget = offHeapBudget;
+        this.offHeapArena = null;
+    }
+
+    public Path getOffHeapDir() {
+        return this.offHeapDir;
+    }
+
+    /**
+     * If dir is not null then the off-heap memory is a memory-mapped temporary file in dir.
+     */
+    public void setOffHeapDir(Path offHeapDir) {
+        this.offHeapDir = offHeapDir;
+        this.offHeapArena = null;
+    }
+
+    /**
+     * Returns a new, empty visited set for states of the given width. The off-heap memory is allocated once and
+     * reused by the consecutive levels of the composition, so a store must not be used after the next one is made.
+     */
+    public StateStore newStateStore(int width) {
+        return this.newStateStore(width, new int[] { 0 }, 0);
+    }
+
+    /**
+     * Returns a store for the states whose components start at the given bits, the first headFields of them changing
+     * with most transitions; only a TreeStateStore uses the components.
+     */
+    public StateStore newStateStore(int width, int[] fieldStarts, int headFields) {
+        if (this.treeCompression) return new TreeStateStore(width, fieldStarts, headFields);
+        if (this.offHeapBudget <= 0) return new HeapStateStore(width);
+
+        if (this.offHeapArena == null) this.offHeapArena = new OffHeapArena(this.offHeapBudget, this.offHeapDir);
+        return new OffHeapStateStore(width, this.offHeapArena);
+    }
+
+    /**
+     * Parses a number of bytes with an optional suffix k, m, g or t (powers of 1024).
+     */
+    public static long parseBytes(String bytes) {
+        String str = bytes.trim().toLowerCase();
+        int shift = 0;
+        if (!str.isEmpty()) {
+            switch (str.charAt(str.length() - 1)) {
+                case 'k': shift = 10; break;
+                case 'm': shift = 20; break;
+                case 'g': shift = 30; break;
+                case 't': shift = 40; break;
+            }
+        }
+        if (shift > 0) str = str.substring(0, str.length() - 1);
+
+        try {
+            long value = Long.parseLong(str);
+            if (value < 0 || value > Long.MAX_VALUE >>> shift) throw new NumberFormatException();
+            return value << shift;
+        } catch (NumberFormatException nfex) {
+            throw new RuntimeException("Not a number of bytes: " + bytes + ".");
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package gsprod;
+
+/**
+ * Receives the product found by an exploration: its transitions as (source, label, target) triples of ints and then
+ * the number of states. The states are numbered densely from 0, the initial state being 0; the labels are the ids of
+ * the net's ActionTable. The calls are not synchronized by the explorers.
+ */
+public interface ProductSink {
+
+    void addTransition(int source, int label, int target);
+
+    /**
+     * Adds count transitions given as consecutive (source, label, target) triples.
+     */
+    default void addTransitions(int[] triples, int count) {
+        for (int i = 0; i < count; ++i) this.addTransition(triples[3 * i], triples[3 * i + 1], triples[3 * i + 2]);
+    }
+
+    /**
+     * Called once, after all the transitions were added.
+     */
+    void setStateCount(int stateCount);
+
+    /**
+     * Receives a line about the exactness of an exploration that may miss or repeat states, e.g., the expected number of
+     * omitted states; it is dropped by default.
+     */
+    default void addReport(String report) {
+    }
+
+    /**
+     * Returns a sink that passes everything to first and then to second.
+     */
+    static ProductSink both(ProductSink first, ProductSink second) {
+        return new ProductSink() {
+            @Override
+            public void addTransition(int source, int label, int target) {
+                first.addTransition(source, label, target);
+                second.addTransition(source, label, target);
+            }
+
+            @Override
+            public void addTransitions(int[] triples, int count) {
+                first.addTransitions(triples, count);
+                second.addTransitions(triples, count);
+            }
+
+            @Override
+            public void setStateCount(int stateCount) {
+                first.setStateCount(stateCount);
+                second.setStateCount(stateCount);
+            }
+
+            @Override
+            public void addReport(String report) {
+                first.addReport(report);
+                second.addReport(report);
+            }
+        };
+    }
+
+}
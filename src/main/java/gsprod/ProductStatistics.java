@@ -0,0 +1,93 @@
+package gsprod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A sink that only counts: the states, the transitions, the transitions of each label and the out-degrees of the
+ * states. It keeps an int per state and a long per label, so an exploration into it takes little more memory than its
+ * visited set. The reports of the inexact explorations are kept and printed with the statistics.
+ */
+public class ProductStatistics implements ProductSink {
+
+    private int stateCount;
+    private long transitionCount;
+    private long[] labelCounts;
+    private int[] outDegrees;
+    private final ArrayList<String> reports = new ArrayList<>();
+
+    public ProductStatistics() {
+        this.labelCounts = new long[16];
+        this.outDegrees = new int[64];
+    }
+
+    @Override
+    public void addTransition(int source, int label, int target) {
+        if (label >= this.labelCounts.length) this.labelCounts = Arrays.copyOf(this.labelCounts, Math.max(2 * this.labelCounts.length, label + 1));
+        if (source >= this.outDegrees.length) this.outDegrees = Arrays.copyOf(this.outDegrees, Math.max(2 * this.outDegrees.length, source + 1));
+        ++this.transitionCount;
+        ++this.labelCounts[label];
+        ++this.outDegrees[source];
+    }
+
+    @Override
+    public void setStateCount(int stateCount) {
+        this.stateCount = stateCount;
+    }
+
+    @Override
+    public void addReport(String report) {
+        this.reports.add(report);
+    }
+
+    public ArrayList<String> getReports() {
+        return this.reports;
+    }
+
+    public int getStateCount() {
+        return this.stateCount;
+    }
+
+    public long getTransitionCount() {
+        return this.transitionCount;
+    }
+
+    /**
+     * Returns the number of transitions with the label.
+     */
+    public long getLabelCount(int label) {
+        return label < this.labelCounts.length ? this.labelCounts[label] : 0;
+    }
+
+    public int getMaxOutDegree() {
+        int max = 0;
+        for (int i = 0; i < Math.min(this.stateCount, this.outDegrees.length); ++i) max = Math.max(max, this.outDegrees[i]);
+        return max;
+    }
+
+    /**
+     * Returns the number of states without outgoing transitions.
+     */
+    public int getDeadlockCount() {
+        int deadlocks = Math.max(0, this.stateCount - this.outDegrees.length);
+        for (int i = 0; i < Math.min(this.stateCount, this.outDegrees.length); ++i) if (this.outDegrees[i] == 0) ++deadlocks;
+        return deadlocks;
+    }
+
+    public double getAverageOutDegree() {
+        return this.stateCount == 0 ? 0 : (double) this.transitionCount / this.stateCount;
+    }
+
+    /**
+     * Returns the degree statistics, the transition counts of the labels that occur and the reports, one per line.
+     */
+    public String toString(ActionTable actions) {
+        StringBuilder result = new StringBuilder(String.format("max out-degree: %d\naverage out-degree: %.3f\ndeadlock states: %d\ntransitions per label:",
+                this.getMaxOutDegree(), this.getAverageOutDegree(), this.getDeadlockCount()));
+        for (int label = 0; label < this.labelCounts.length; ++label)
+            if (this.labelCounts[label] > 0) result.append("\n  ").append(actions.getName(label)).append(": ").append(this.labelCounts[label]);
+        for (String report: this.reports) result.append("\n").append(report);
+        return result.toString();
+    }
+
+}
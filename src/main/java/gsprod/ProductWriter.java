@@ -0,0 +1,191 @@
+package gsprod;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A sink that writes the product to a file while it is explored, through a fixed buffer of a FileChannel, so the
+ * memory taken doesn't grow with the product. The states are named by their numbers. Both formats need the counts
+ * before the transitions: the Aldebaran header is written padded and overwritten at the end, the states of the dumpFile
+ * format are written at the end and followed by the transitions, which go to a temporary file next to the output.
+ */
+public class ProductWriter implements ProductSink, Closeable {
+
+    public enum Format {
+        /** The format of AutomataNet.dumpFile and readAutomaton. */
+        DUMP,
+        /** The Aldebaran (.aut) format of CADP. */
+        AUT
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int AUT_HEADER_SIZE = 48;
+
+    private final Path file;
+    private final Format format;
+    private final ActionTable actions;
+    private final FileChannel out;
+    private final Path transitionFile;
+    private final FileChannel transitionOut;
+    private final ByteBuffer buffer;
+    private byte[][] labelBytes;
+    private int stateCount;
+    private long transitionCount;
+    private boolean finished;
+
+    public ProductWriter(Path file, Format format, ActionTable actions) {
+        this.file = file;
+        this.format = format;
+        this.actions = actions;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.labelBytes = new byte[16][];
+        try {
+            this.out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (format == Format.AUT) {
+                this.transitionFile = null;
+                this.transitionOut = this.out;
+                this.put(this.autHeader(0, 0));
+            } else {
+                Path dir = file.toAbsolutePath().getParent();
+                this.transitionFile = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+                this.transitionOut = FileChannel.open(this.transitionFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("Cannot open " + file + ": " + ioex.getMessage(), ioex);
+        }
+    }
+
+    /**
+     * Returns the format of the file name: Aldebaran if it ends with .aut, the dumpFile one otherwise.
+     */
+    public static Format formatOf(Path file) {
+        return file.getFileName().toString().endsWith(".aut") ? Format.AUT : Format.DUMP;
+    }
+
+    public int getStateCount() {
+        return this.stateCount;
+    }
+
+    public long getTransitionCount() {
+        return this.transitionCount;
+    }
+
+    @Override
+    public void addTransition(int source, int label, int target) {
+        ++this.transitionCount;
+        byte[] name = this.labelBytes(label);
+        if (this.buffer.remaining() < name.length + 32) this.flush(this.transitionOut);
+
+        // don't change commas or anything below or external tool won't parse it, see AutomataNet.dumpFile
+        this.buffer.put((byte) '(');
+        this.putInt(source);
+        if (this.format == Format.AUT) {
+            this.buffer.put((byte) ',').put((byte) '"').put(name).put((byte) '"').put((byte) ',');
+        } else {
+            this.buffer.put((byte) ',').put((byte) ' ').put(name).put((byte) ' ').put((byte) ',');
+        }
+        this.putInt(target);
+        this.buffer.put((byte) ')').put((byte) '\n');
+    }
+
+    /**
+     * Finishes the file: the counts of the header or the states are written and the file is complete.
+     */
+    @Override
+    public void setStateCount(int stateCount) {
+        this.stateCount = stateCount;
+        try {
+            this.flush(this.transitionOut);
+            if (this.format == Format.AUT) {
+                this.buffer.put(this.autHeader(stateCount, this.transitionCount)).flip();
+                while (this.buffer.hasRemaining()) this.out.write(this.buffer, AUT_HEADER_SIZE - this.buffer.remaining());
+                this.buffer.clear();
+            } else {
+                this.put("states\n".getBytes(StandardCharsets.US_ASCII));
+                for (int state = 0; state < stateCount; ++state) {
+                    if (this.buffer.remaining() < 16) this.flush(this.out);
+                    this.putInt(state);
+                    this.buffer.put((byte) '\n');
+                }
+                this.put("transitions\n".getBytes(StandardCharsets.US_ASCII));
+                this.flush(this.out);
+
+                long size = this.transitionOut.size();
+                for (long pos = 0; pos < size; ) pos += this.transitionOut.transferTo(pos, size - pos, this.out);
+            }
+            this.finished = true;
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("Cannot write " + this.file + ": " + ioex.getMessage(), ioex);
+        }
+    }
+
+    /**
+     * Closes the file; if the exploration didn't finish, the file is incomplete.
+     */
+    @Override
+    public void close() {
+        try {
+            if (!this.finished) this.flush(this.transitionOut);
+            this.out.close();
+            if (this.transitionFile != null) {
+                this.transitionOut.close();
+                Files.deleteIfExists(this.transitionFile);
+            }
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("Cannot close " + this.file + ": " + ioex.getMessage(), ioex);
+        }
+    }
+
+    /**
+     * The header "des (initial, transitions, states)", padded with spaces so that it can be overwritten in place.
+     */
+    private byte[] autHeader(int stateCount, long transitionCount) {
+        byte[] header = new byte[AUT_HEADER_SIZE];
+        Arrays.fill(header, (byte) ' ');
+        byte[] text = ("des (0, " + transitionCount + ", " + stateCount + ")").getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(text, 0, header, 0, text.length);
+        header[AUT_HEADER_SIZE - 1] = '\n';
+        return header;
+    }
+
+    private byte[] labelBytes(int label) {
+        if (label >= this.labelBytes.length) this.labelBytes = Arrays.copyOf(this.labelBytes, Math.max(2 * this.labelBytes.length, label + 1));
+        if (this.labelBytes[label] == null) this.labelBytes[label] = this.actions.getName(label).getBytes(StandardCharsets.UTF_8);
+        return this.labelBytes[label];
+    }
+
+    private void put(byte[] bytes) {
+        if (this.buffer.remaining() < bytes.length) this.flush(this.out);
+        this.buffer.put(bytes);
+    }
+
+    /**
+     * Puts the decimal digits of a non-negative value.
+     */
+    private void putInt(int value) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) ++digits;
+        int end = this.buffer.position() + digits;
+        for (int pos = end - 1; pos >= end - digits; --pos, value /= 10) this.buffer.put(pos, (byte) ('0' + value % 10));
+        this.buffer.position(end);
+    }
+
+    private void flush(FileChannel channel) {
+        try {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) channel.write(this.buffer);
+            this.buffer.clear();
+        } catch (IOException ioex) {
+            throw new UncheckedIOException("Cannot write " + this.file + ": " + ioex.getMessage(), ioex);
+        }
+    }
+
+}
@@ -34,25 +34,33 @@ public class RandomAutomatonGenerator {
         this.liveReset = liveReset;
     }
 
-    public Automaton generate(LinkedHashSet<String> syncActions) {
+    /**
+     * Generates a random automaton over syncActions and tau. The labels are interned in the action table.
+     */
+    public Automaton generate(LinkedHashSet<String> syncActions, ActionTable actions) {
         // this might need a rewrite
         // note: the first action of syncActions is treated as the (only) reset action is liveReset is set
         Random rng = new Random();
+        String tau = actions.canonical(RandomAutomatonGenerator.tau);
 
         HashMap<String, Boolean> usedAct = new HashMap<>();
         for (String action: syncActions) usedAct.put(action, false);
 
         String[] syncActsArray = new String[syncActions.size()];
         syncActsArray = syncActions.toArray(syncActsArray);
+        for (int i = 0; i < syncActsArray.length; ++i) syncActsArray[i] = actions.canonical(syncActsArray[i]);
         int noOfStates = rng.nextInt(this.maxAutosize - this.minAutoSize + 1) + this.minAutoSize;
         HashSet<Transition> transitions = new HashSet<>();
 
+        // state i is named stateNames[i], so that the transitions share the names
+        String[] stateNames = IntStream.range(0, noOfStates + 1).mapToObj(String::valueOf).toArray(String[]::new);
+
         int ctr = 1;
-        String init = "1";
+        String init = stateNames[1];
         while (ctr <= noOfStates) {
 
             // choose a random state from already existing and reachable
-            String currState = Integer.toString(rng.nextInt(ctr) + 1);
+            String currState = stateNames[rng.nextInt(ctr) + 1];
             String nextState;
             String transLabel = tau;
 
@@ -67,8 +75,8 @@ public class RandomAutomatonGenerator {
             if (this.liveReset && syncActsArray.length > 0 && transLabel.equals(syncActsArray[0])) { // resetting action
                 nextState = init;
             } else { // other actions
-                if (rng.nextDouble() < exploreNewProbability) nextState = Integer.toString(ctr++);
-                else nextState = Integer.toString(rng.nextInt(ctr) + 1);
+                if (rng.nextDouble() < exploreNewProbability) nextState = stateNames[ctr++];
+                else nextState = stateNames[rng.nextInt(ctr) + 1];
             }
 
             transitions.add(new Transition(currState, transLabel, nextState));
@@ -76,8 +84,8 @@ public class RandomAutomatonGenerator {
 
         // now, add some more random transitions is there is a transition label that hasn't been used
         while (usedAct.entrySet().stream().anyMatch(e -> !e.getValue())) {
-            String currState = Integer.toString(rng.nextInt(noOfStates) + 1);
-            String nextState = Integer.toString(rng.nextInt(noOfStates) + 1);
+            String currState = stateNames[rng.nextInt(noOfStates) + 1];
+            String nextState = stateNames[rng.nextInt(noOfStates) + 1];
             String transLabel = tau;
 
             if (rng.nextDouble() < chooseSynchTransProbability) {
@@ -87,7 +95,7 @@ public class RandomAutomatonGenerator {
             transitions.add(new Transition(currState, transLabel, nextState));
         }
 
-        ArrayList<String> states = IntStream.range(1, noOfStates + 1).boxed().map(String::valueOf).collect(Collectors.toCollection(ArrayList::new));
+        ArrayList<String> states = IntStream.range(1, noOfStates + 1).mapToObj(i -> stateNames[i]).collect(Collectors.toCollection(ArrayList::new));
         ArrayList<Transition> transitionsF = transitions.stream().collect(Collectors.toCollection(ArrayList::new));
 
         return new Automaton(states, transitionsF);
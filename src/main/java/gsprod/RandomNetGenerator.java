@@ -15,9 +15,9 @@ public class RandomNetGenerator {
 
         syncActs.add(prefix);
         if (depth > 0) syncActs.addAll(syncDownActs);
-        Automaton node = gen.generate(syncActs);
+        Automaton node = gen.generate(syncActs, net.getActionTable());
         net.getAutomata().add(node);
-        net.getActions().addAll(syncDownActs);
+        for (String action: syncDownActs) net.getActionTable().addSync(action);
 
         if (depth > 0)
             for (String deeperPrefix: syncDownActs)
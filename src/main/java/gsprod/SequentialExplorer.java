@@ -0,0 +1,61 @@
+package gsprod;
+
+/**
+ * The single-threaded breadth-first exploration. The states are numbered in the order of discovery, so the BFS frontier
+ * is implicit: the states not yet expanded are exactly those with ids from the current one on.
+ */
+public class SequentialExplorer implements ProductExplorer {
+
+    private final ProductSettings settings;
+
+    public SequentialExplorer(ProductSettings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        // state i of the store is state i + 1 of the product; 0 is the dummy initial state
+        int width = level.getWidth();
+        StateStore visited = this.settings.newStateStore(width, level.getFieldStarts(), level.getHeadFieldCount());
+        long[] curr = new long[width];
+        long[] succ = new long[width];
+
+        // connect the dummy init with pairs of inits of root and each child
+        for (int i = 0; i < level.getInitialCount(); ++i) {
+            level.encodeInitial(i, succ, 0);
+            product.addTransition(0, level.getEpsilon(), visited.add(succ, 0) + 1);
+        }
+
+        // build the graph
+        for (int currId = 0; currId < visited.size(); ++currId) {
+            visited.get(currId, curr, 0);
+            int source = currId + 1;
+            level.expand(curr, succ, (label, slots, base) -> product.addTransition(source, label, visited.add(slots, base) + 1));
+        }
+
+        if (verbose) System.out.println("visited store: " + visited);
+        product.setStateCount(visited.size() + 1);
+    }
+
+    /**
+     * Explores the states of the implicit automaton reachable from its initial state, which gets number 0.
+     */
+    public void explore(ImplicitAutomaton automaton, ProductSink product, boolean verbose) {
+        int width = automaton.getWidth();
+        StateStore visited = this.settings.newStateStore(width, automaton.getFieldStarts(), automaton.getHeadFieldCount());
+        long[] curr = new long[width];
+        long[] succ = new long[width];
+
+        automaton.encodeInitial(curr, 0);
+        visited.add(curr, 0);
+        for (int currId = 0; currId < visited.size(); ++currId) {
+            visited.get(currId, curr, 0);
+            int source = currId;
+            automaton.successors(curr, 0, succ, (label, slots, base) -> product.addTransition(source, label, visited.add(slots, base)));
+        }
+
+        if (verbose) System.out.println("visited store: " + visited);
+        product.setStateCount(visited.size());
+    }
+
+}
@@ -0,0 +1,196 @@
+package gsprod;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A parallel exploration that partitions the product states by their active child. The local moves of the active child
+ * and of the root keep the active child, so only the synchronized moves can lead to another shard. Every shard has its
+ * own thread and a private visited set, explored breadth-first as in SequentialExplorer; the successors that belong to
+ * other shards are sent to them in batches through queues. The exploration ends when all the shards are idle and no
+ * batch is in flight, which is tracked by a single counter of active shards and sent batches.
+ */
+public class ShardedExplorer implements ProductExplorer {
+
+    private static final int BATCH_RECORDS = 256;
+    private static final int EXPAND_CHUNK = 256;
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        int shardCount = level.getInitialCount();
+        Shard[] shards = new Shard[shardCount];
+        AtomicInteger busy = new AtomicInteger(shardCount);
+        for (int i = 0; i < shardCount; ++i) shards[i] = new Shard(i, level, shards, busy);
+
+        long[] succ = new long[level.getWidth()];
+        for (int i = 0; i < shardCount; ++i) {
+            level.encodeInitial(i, succ, 0);
+            shards[i].visited.add(succ, 0);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(shardCount);
+        try {
+            LevelParallelExplorer.invokeAll(pool, Arrays.asList(shards));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // number the states shard by shard, state 0 is the dummy initial state
+        int[] offsets = new int[shardCount + 1];
+        offsets[0] = 1;
+        for (int i = 0; i < shardCount; ++i) offsets[i + 1] = offsets[i] + shards[i].visited.size();
+        for (int i = 0; i < shardCount; ++i) product.addTransition(0, level.getEpsilon(), offsets[i]);
+        for (Shard shard: shards) {
+            int[] quads = shard.transitions;
+            for (int pos = 0; pos < 4 * shard.transitionCount; pos += 4)
+                product.addTransition(offsets[quads[pos]] + quads[pos + 1], quads[pos + 2], offsets[shard.index] + quads[pos + 3]);
+        }
+
+        if (verbose) {
+            System.out.println("visited store: " + (offsets[shardCount] - 1) + " states in " + shardCount + " shards");
+            for (Shard shard: shards) System.out.println("  shard " + shard.index + ": " + shard.visited + ", "
+                    + shard.batchesSent + " batches sent");
+        }
+        product.setStateCount(offsets[shardCount]);
+    }
+
+    private static class Shard implements Callable<Void> {
+
+        private final int index;
+        private final ProductLevel level;
+        private final Shard[] shards;
+        private final AtomicInteger busy;
+        private final int width;
+        private final HeapStateStore visited;
+        private final LinkedBlockingQueue<long[]> inbox;
+        private final long[][] outboxes;
+        private final int[] outboxSizes;
+        private volatile boolean failed;
+
+        // transitions into this shard as (source shard, source local id, label, target local id)
+        private int[] transitions;
+        private int transitionCount;
+        private int expanded;
+        private long batchesSent;
+
+        Shard(int index, ProductLevel level, Shard[] shards, AtomicInteger busy) {
+            this.index = index;
+            this.level = level;
+            this.shards = shards;
+            this.busy = busy;
+            this.width = level.getWidth();
+            this.visited = new HeapStateStore(this.width);
+            this.inbox = new LinkedBlockingQueue<>();
+            this.outboxes = new long[shards.length][];
+            this.outboxSizes = new int[shards.length];
+            this.transitions = new int[4 * 64];
+        }
+
+        /**
+         * The batches are records of 2 + width longs: the source shard and local id, the label and the target state.
+         */
+        private int recordLength() {
+            return 2 + this.width;
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            try {
+                this.run();
+            } catch (RuntimeException | Error ex) {
+                for (Shard shard: this.shards) shard.failed = true;
+                throw ex;
+            }
+            return null;
+        }
+
+        private void run() throws InterruptedException {
+            long[] curr = new long[this.width];
+            long[] succ = new long[this.width];
+
+            while (!this.failed) {
+                long[] batch;
+                while ((batch = this.inbox.poll()) != null) {
+                    this.receive(batch);
+                    this.busy.decrementAndGet();
+                }
+
+                if (this.expanded < this.visited.size()) {
+                    int end = Math.min(this.visited.size(), this.expanded + EXPAND_CHUNK);
+                    for (; this.expanded < end; ++this.expanded) {
+                        int source = this.expanded;
+                        this.visited.get(source, curr, 0);
+                        this.level.expand(curr, succ, (label, slots, base) -> this.route(source, label, slots, base));
+                    }
+                    continue;
+                }
+
+                // nothing to do: send the partial batches and go idle until a batch comes or everyone is idle
+                for (int target = 0; target < this.shards.length; ++target) this.flush(target);
+                this.busy.decrementAndGet();
+                while (true) {
+                    if (this.failed) return;
+                    batch = this.inbox.poll(1, TimeUnit.MILLISECONDS);
+                    if (batch != null) {
+                        this.busy.incrementAndGet();
+                        this.receive(batch);
+                        this.busy.decrementAndGet();
+                        break;
+                    }
+                    if (this.busy.get() == 0) return;
+                }
+            }
+        }
+
+        private void route(int source, int label, long[] slots, int base) {
+            int target = this.level.getCodec().getActiveChild(slots, base);
+            if (target == this.index) {
+                this.addTransition(this.index, source, label, this.visited.add(slots, base));
+                return;
+            }
+
+            if (this.outboxes[target] == null) this.outboxes[target] = new long[BATCH_RECORDS * this.recordLength()];
+            long[] outbox = this.outboxes[target];
+            int pos = this.outboxSizes[target] * this.recordLength();
+            outbox[pos] = ((long) this.index << 32) | source;
+            outbox[pos + 1] = label;
+            System.arraycopy(slots, base, outbox, pos + 2, this.width);
+            if (++this.outboxSizes[target] == BATCH_RECORDS) this.flush(target);
+        }
+
+        private void flush(int target) {
+            if (this.outboxSizes[target] == 0) return;
+            long[] batch = Arrays.copyOf(this.outboxes[target], this.outboxSizes[target] * this.recordLength());
+            this.outboxSizes[target] = 0;
+            ++this.batchesSent;
+
+            // the batch counts as busy until its receiver has processed it
+            this.busy.incrementAndGet();
+            this.shards[target].inbox.add(batch);
+        }
+
+        private void receive(long[] batch) {
+            for (int pos = 0; pos < batch.length; pos += this.recordLength()) {
+                int id = this.visited.add(batch, pos + 2);
+                this.addTransition((int) (batch[pos] >>> 32), (int) batch[pos], (int) batch[pos + 1], id);
+            }
+        }
+
+        private void addTransition(int sourceShard, int source, int label, int target) {
+            if (this.transitions.length < 4 * (this.transitionCount + 1))
+                this.transitions = Arrays.copyOf(this.transitions, 2 * this.transitions.length);
+            int pos = 4 * this.transitionCount++;
+            this.transitions[pos] = sourceShard;
+            this.transitions[pos + 1] = source;
+            this.transitions[pos + 2] = label;
+            this.transitions[pos + 3] = target;
+        }
+
+    }
+
+}
@@ -0,0 +1,293 @@
+package gsprod;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A visited set of bounded size that forgets states when it is full: a state cache in the sense of Holzmann. Every
+ * state has the product id it got when it was stored, -1 if it is not known, and a depth. The pinned states (those on
+ * the search path) are never evicted; when the cache holds more than its capacity, the insertion evicts an unpinned
+ * state chosen by the policy, or grows the cache if all the states are pinned.
+ * <p>
+ * The entries live in parallel arrays indexed by an open-addressing table with linear probing, which is kept at most
+ * half full and deletes by backward shifting. The unpinned entries are kept in doubly linked lists, one per depth for
+ * the LOWEST_DEPTH policy and a single one, in the order of use, for the others.
+ * <p>
+ * An eighth of the bytes is a direct-mapped table of the 64-bit fingerprints of the evicted states, so that most of
+ * the evicted states are recognized when they are reached again; a fingerprint is forgotten when another one takes its
+ * slot.
+ */
+public class StateCache {
+
+    public enum Policy {
+        /** Evict the least recently used state. */
+        LRU,
+        /** Evict a random state. */
+        RANDOM,
+        /** Evict a state of the lowest depth, i.e., the one stored closest to the initial state. */
+        LOWEST_DEPTH
+    }
+
+    private static final int EMPTY = -1;
+    private static final int RANDOM_TRIES = 16;
+    private static final long NO_FINGERPRINT = 0L;
+
+    private final int width;
+    private final int capacity;
+    private final Policy policy;
+    private final Random random = new Random(0);
+    private final long[] evicted;
+    private final int evictedMask;
+
+    private long[] states;
+    private int[] hashes;
+    private int[] ids;
+    private int[] depths;
+    private boolean[] pinned;
+    private int[] prev;
+    private int[] next;
+    private int[] table;
+    private int size;
+    private int freeEntry = EMPTY;
+    private int usedEntries;
+
+    private int[] listHeads = { EMPTY };
+    private int[] listTails = { EMPTY };
+    private int minList;
+
+    private long lookups;
+    private long hits;
+    private long evictions;
+    private int maxSize;
+
+    /**
+     * Makes a cache of about the given number of bytes, including the table, for states of the given width.
+     */
+    public StateCache(int width, long bytes, Policy policy) {
+        this.width = width;
+        this.policy = policy;
+        this.evicted = new long[(int) Long.highestOneBit(Math.max(16, Math.min(1 << 30, bytes / 8 / Long.BYTES)))];
+        this.evictedMask = this.evicted.length - 1;
+        this.capacity = (int) Math.max(16, Math.min(1 << 29, (bytes - Long.BYTES * this.evicted.length) / bytesPerEntry(width)));
+        this.states = new long[16 * width];
+        this.hashes = new int[16];
+        this.ids = new int[16];
+        this.depths = new int[16];
+        this.pinned = new boolean[16];
+        this.prev = new int[16];
+        this.next = new int[16];
+        this.table = new int[32];
+        Arrays.fill(this.table, EMPTY);
+    }
+
+    /**
+     * The state, its hash, id, depth, pin and list links, and the two table slots of an entry.
+     */
+    private static long bytesPerEntry(int width) {
+        return 8L * width + 4 + 4 + 4 + 1 + 8 + 8;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the entry of the state in slots at [base, base + width), or -1 if it is not cached.
+     */
+    public int find(long[] slots, int base) {
+        ++this.lookups;
+        int hash = HeapStateStore.hash(slots, base, this.width);
+        int mask = this.table.length - 1;
+        for (int pos = hash & mask; this.table[pos] != EMPTY; pos = (pos + 1) & mask) {
+            int entry = this.table[pos];
+            if (this.hashes[entry] == hash && this.equalsEntry(entry, slots, base)) {
+                ++this.hits;
+                if (this.policy != Policy.LOWEST_DEPTH && !this.pinned[entry]) {
+                    this.unlink(entry);
+                    this.link(entry);
+                }
+                return entry;
+            }
+        }
+        return EMPTY;
+    }
+
+    public int getId(int entry) {
+        return this.ids[entry];
+    }
+
+    /**
+     * Returns true if the state in slots at [base, base + width), which must not be cached, is remembered as evicted;
+     * an evicted state whose fingerprint was forgotten is not.
+     */
+    public boolean wasEvicted(long[] slots, int base) {
+        long fingerprint = fingerprint(slots, base, this.width);
+        return this.evicted[(int) (fingerprint >>> 32) & this.evictedMask] == fingerprint;
+    }
+
+    private static long fingerprint(long[] slots, int base, int width) {
+        long fingerprint = ApproximateStateSet.hash64(slots, base, width, 0L);
+        return fingerprint == NO_FINGERPRINT ? 1L : fingerprint;
+    }
+
+    /**
+     * Stores the state, which must not be cached, with the given id and depth as a pinned entry and returns the entry,
+     * first evicting a state if the cache is full.
+     */
+    public int addPinned(long[] slots, int base, int id, int depth) {
+        if (this.size >= this.capacity) this.evict();
+
+        int entry = this.freeEntry;
+        if (entry != EMPTY) {
+            this.freeEntry = this.next[entry];
+        } else {
+            entry = this.usedEntries++;
+            if (entry == this.ids.length) this.growEntries();
+        }
+        System.arraycopy(slots, base, this.states, entry * this.width, this.width);
+        this.hashes[entry] = HeapStateStore.hash(slots, base, this.width);
+        this.ids[entry] = id;
+        this.depths[entry] = depth;
+        this.pinned[entry] = true;
+        this.prev[entry] = EMPTY;
+        this.next[entry] = EMPTY;
+
+        if (2 * (this.size + 1) > this.table.length) this.growTable();
+        int mask = this.table.length - 1;
+        int pos = this.hashes[entry] & mask;
+        while (this.table[pos] != EMPTY) pos = (pos + 1) & mask;
+        this.table[pos] = entry;
+        this.maxSize = Math.max(this.maxSize, ++this.size);
+        return entry;
+    }
+
+    /**
+     * Makes the entry evictable.
+     */
+    public void unpin(int entry) {
+        this.pinned[entry] = false;
+        this.link(entry);
+    }
+
+    private void evict() {
+        int entry = EMPTY;
+        if (this.policy == Policy.RANDOM) {
+            for (int i = 0; i < RANDOM_TRIES && entry == EMPTY; ++i) {
+                int candidate = this.random.nextInt(this.usedEntries);
+                if (this.depths[candidate] != EMPTY && !this.pinned[candidate]) entry = candidate;
+            }
+        }
+        if (entry == EMPTY) {
+            while (this.minList < this.listHeads.length && this.listHeads[this.minList] == EMPTY) ++this.minList;
+            if (this.minList == this.listHeads.length) return;
+            entry = this.listHeads[this.minList];
+        }
+
+        long fingerprint = fingerprint(this.states, entry * this.width, this.width);
+        this.evicted[(int) (fingerprint >>> 32) & this.evictedMask] = fingerprint;
+        this.unlink(entry);
+        this.removeFromTable(entry);
+        this.depths[entry] = EMPTY;
+        this.next[entry] = this.freeEntry;
+        this.freeEntry = entry;
+        --this.size;
+        ++this.evictions;
+    }
+
+    private int listOf(int entry) {
+        return this.policy == Policy.LOWEST_DEPTH ? this.depths[entry] : 0;
+    }
+
+    /**
+     * Appends the entry to the tail of its list.
+     */
+    private void link(int entry) {
+        int list = this.listOf(entry);
+        if (list >= this.listHeads.length) {
+            int length = this.listHeads.length;
+            this.listHeads = Arrays.copyOf(this.listHeads, Math.max(2 * length, list + 1));
+            this.listTails = Arrays.copyOf(this.listTails, this.listHeads.length);
+            Arrays.fill(this.listHeads, length, this.listHeads.length, EMPTY);
+            Arrays.fill(this.listTails, length, this.listTails.length, EMPTY);
+        }
+        this.prev[entry] = this.listTails[list];
+        this.next[entry] = EMPTY;
+        if (this.listTails[list] == EMPTY) this.listHeads[list] = entry;
+        else this.next[this.listTails[list]] = entry;
+        this.listTails[list] = entry;
+        this.minList = Math.min(this.minList, list);
+    }
+
+    private void unlink(int entry) {
+        int list = this.listOf(entry);
+        if (this.prev[entry] == EMPTY) this.listHeads[list] = this.next[entry];
+        else this.next[this.prev[entry]] = this.next[entry];
+        if (this.next[entry] == EMPTY) this.listTails[list] = this.prev[entry];
+        else this.prev[this.next[entry]] = this.prev[entry];
+        this.prev[entry] = EMPTY;
+        this.next[entry] = EMPTY;
+    }
+
+    private void removeFromTable(int entry) {
+        int mask = this.table.length - 1;
+        int pos = this.hashes[entry] & mask;
+        while (this.table[pos] != entry) pos = (pos + 1) & mask;
+
+        // shift back the entries of the probe sequence that would no longer be found
+        int hole = pos;
+        for (pos = (pos + 1) & mask; this.table[pos] != EMPTY; pos = (pos + 1) & mask) {
+            int home = this.hashes[this.table[pos]] & mask;
+            if (((pos - home) & mask) >= ((pos - hole) & mask)) {
+                this.table[hole] = this.table[pos];
+                hole = pos;
+            }
+        }
+        this.table[hole] = EMPTY;
+    }
+
+    private void growEntries() {
+        int length = 2 * this.ids.length;
+        this.states = Arrays.copyOf(this.states, length * this.width);
+        this.hashes = Arrays.copyOf(this.hashes, length);
+        this.ids = Arrays.copyOf(this.ids, length);
+        this.depths = Arrays.copyOf(this.depths, length);
+        this.pinned = Arrays.copyOf(this.pinned, length);
+        this.prev = Arrays.copyOf(this.prev, length);
+        this.next = Arrays.copyOf(this.next, length);
+    }
+
+    private void growTable() {
+        int[] old = this.table;
+        this.table = new int[2 * old.length];
+        Arrays.fill(this.table, EMPTY);
+        int mask = this.table.length - 1;
+        for (int entry: old) {
+            if (entry == EMPTY) continue;
+            int pos = this.hashes[entry] & mask;
+            while (this.table[pos] != EMPTY) pos = (pos + 1) & mask;
+            this.table[pos] = entry;
+        }
+    }
+
+    private boolean equalsEntry(int entry, long[] slots, int base) {
+        int start = entry * this.width;
+        for (int i = 0; i < this.width; ++i) if (this.states[start + i] != slots[base + i]) return false;
+        return true;
+    }
+
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cache of %d states (%d bytes) and %d evicted fingerprints, %d lookups, %d hits, %d evictions, "
+                + "at most %d states cached", this.policy, this.capacity, this.capacity * bytesPerEntry(this.width),
+                this.evicted.length, this.lookups, this.hits, this.evictions, this.maxSize);
+    }
+
+}
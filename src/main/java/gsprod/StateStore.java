@@ -0,0 +1,30 @@
+package gsprod;
+
+/**
+ * A visited set of encoded product states (see GSQStateCodec) that numbers the states densely in the order of insertion.
+ */
+public interface StateStore {
+
+    /**
+     * Returns the number of longs taken by a state.
+     */
+    int getWidth();
+
+    int size();
+
+    /**
+     * Returns the id of the state stored in slots at [base, base + width), inserting it if it is new.
+     */
+    int add(long[] slots, int base);
+
+    /**
+     * Copies the state with the given id to slots at [base, base + width).
+     */
+    void get(int id, long[] slots, int base);
+
+    /**
+     * Returns the number of bytes taken by the store.
+     */
+    long getAllocatedBytes();
+
+}
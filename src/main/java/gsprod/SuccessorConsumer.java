@@ -0,0 +1,14 @@
+package gsprod;
+
+/**
+ * Receives the successors of a product state from ProductLevel.expand.
+ */
+public interface SuccessorConsumer {
+
+    /**
+     * Called for a transition labelled with label that leads to the state encoded in slots at [base, base + width).
+     * The slots are only valid during the call.
+     */
+    void accept(int label, long[] slots, int base);
+
+}
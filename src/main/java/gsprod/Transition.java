@@ -1,15 +1,21 @@
 package gsprod;
 
-public class Transition implements Comparable {
+/**
+ * An immutable transition. The hash is computed once, equality and order are field-wise; labels (and, where the
+ * creator shares them, state names) are interned, so comparing equal fields is mostly a reference check.
+ */
+public final class Transition implements Comparable<Transition> {
 
-    private String source;
-    private String label;
-    private String target;
+    private final String source;
+    private final String label;
+    private final String target;
+    private final int hash;
 
     public Transition(String source, String label, String target) {
         this.source = source;
         this.label = label;
         this.target = target;
+        this.hash = (31 * source.hashCode() + label.hashCode()) * 31 + target.hashCode();
     }
 
     public String getSource() {
@@ -29,15 +35,24 @@ public class Transition implements Comparable {
     }
 
     @Override
-    public int compareTo(Object o) {
-        Transition trans = (Transition) o;
-        return this.toString().compareTo(trans.toString());
+    public int compareTo(Transition trans) {
+        int cmp = this.source.compareTo(trans.source);
+        if (cmp == 0) cmp = this.label.compareTo(trans.label);
+        if (cmp == 0) cmp = this.target.compareTo(trans.target);
+        return cmp;
     }
 
     @Override
     public boolean equals(Object object) {
         if (this == object) return true;
         if (object == null || this.getClass() != object.getClass()) return false;
-        return object.toString().equals(this.toString());
+        Transition trans = (Transition) object;
+        return this.hash == trans.hash && this.source.equals(trans.source) && this.label.equals(trans.label)
+                && this.target.equals(trans.target);
     }
-}
\ No newline at end of file
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
@@ -0,0 +1,226 @@
+package gsprod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A StateStore with tree compression (Laarman, van de Pol, Weber: Parallel recursive state compression for free,
+ * 2011). The fields of a state, at most 32 bits each, are the leaves of a binary tree; every inner node of the tree has
+ * its own table that interns the pairs of references of its children, a reference being the field itself for a leaf
+ * and the id in the child's table otherwise. So a state is the entry of its pair in the root table and the parts that
+ * states have in common, e.g., the memory of the children that didn't move, are stored once. The ids of the root table
+ * are dense in the order of insertion and are the ids of the states.
+ * <p>
+ * The fields are given by their first bits, a field ending where the next one starts; a longer field is cut into
+ * 32-bit leaves. The first head fields form the left subtree of the root and the others the right one, both balanced:
+ * the fields that change on every transition, e.g., the root state and the active child, should be the head, so that
+ * a new state adds few entries besides the one of the root table.
+ */
+public class TreeStateStore implements StateStore {
+
+    private final int width;
+    private final int[] leafOffset;
+    private final int[] leafBits;
+    private final int[] nodeLow;
+    private final int[] nodeHigh;
+    private final int[] leftChild;
+    private final int[] rightChild;
+    private final NodeTable[] tables;
+    private int nodeCount;
+
+    /**
+     * Makes a store whose fields are the 32-bit halves of the longs of a state.
+     */
+    public TreeStateStore(int width) {
+        this(width, new int[] { 0 }, 0);
+    }
+
+    /**
+     * Makes a store for the states of the given width whose fields start at the given bits, in increasing order.
+     */
+    public TreeStateStore(int width, int[] fieldStarts, int headFields) {
+        this.width = width;
+        ArrayList<int[]> leaves = new ArrayList<>();
+        int headLeaves = 0;
+        for (int i = 0; i < fieldStarts.length; ++i) {
+            int end = i + 1 < fieldStarts.length ? fieldStarts[i + 1] : width * Long.SIZE;
+            for (int offset = fieldStarts[i]; offset < end; offset += Integer.SIZE)
+                leaves.add(new int[] { offset, Math.min(Integer.SIZE, end - offset) });
+            if (i + 1 == headFields) headLeaves = leaves.size();
+        }
+        if (leaves.size() < 2) leaves.add(new int[] { width * Long.SIZE, 0 });
+        if (headLeaves == leaves.size()) headLeaves = 0;
+        this.leafOffset = new int[leaves.size()];
+        this.leafBits = new int[leaves.size()];
+        for (int i = 0; i < leaves.size(); ++i) {
+            this.leafOffset[i] = leaves.get(i)[0];
+            this.leafBits[i] = leaves.get(i)[1];
+        }
+
+        int nodes = leaves.size() - 1;
+        this.nodeLow = new int[nodes];
+        this.nodeHigh = new int[nodes];
+        this.leftChild = new int[nodes];
+        this.rightChild = new int[nodes];
+        this.tables = new NodeTable[nodes];
+        this.build(0, leaves.size(), headLeaves);
+    }
+
+    /**
+     * Adds the node of the leaves [low, high), split at mid if it is inside, and its subtrees; returns the index of
+     * the node or -1 for a leaf.
+     */
+    private int build(int low, int high, int mid) {
+        if (high - low == 1) return -1;
+
+        int node = this.nodeCount++;
+        if (mid <= low || mid >= high) mid = low + (high - low) / 2;
+        this.nodeLow[node] = low;
+        this.nodeHigh[node] = high;
+        this.tables[node] = new NodeTable();
+        this.leftChild[node] = this.build(low, mid, -1);
+        this.rightChild[node] = this.build(mid, high, -1);
+        return node;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int size() {
+        return this.tables[0].size;
+    }
+
+    @Override
+    public int add(long[] slots, int base) {
+        return this.intern(0, slots, base);
+    }
+
+    private int intern(int node, long[] slots, int base) {
+        int left = this.leftChild[node] < 0 ? this.readLeaf(this.nodeLow[node], slots, base) : this.intern(this.leftChild[node], slots, base);
+        int right = this.rightChild[node] < 0 ? this.readLeaf(this.nodeHigh[node] - 1, slots, base) : this.intern(this.rightChild[node], slots, base);
+        return this.tables[node].add(((long) left << 32) | (right & 0xffffffffL));
+    }
+
+    @Override
+    public void get(int id, long[] slots, int base) {
+        this.expand(0, id, slots, base);
+    }
+
+    private void expand(int node, int id, long[] slots, int base) {
+        long pair = this.tables[node].get(id);
+        int left = (int) (pair >>> 32);
+        int right = (int) pair;
+        if (this.leftChild[node] < 0) this.writeLeaf(this.nodeLow[node], slots, base, left);
+        else this.expand(this.leftChild[node], left, slots, base);
+        if (this.rightChild[node] < 0) this.writeLeaf(this.nodeHigh[node] - 1, slots, base, right);
+        else this.expand(this.rightChild[node], right, slots, base);
+    }
+
+    private int readLeaf(int leaf, long[] slots, int base) {
+        if (this.leafBits[leaf] == 0) return 0;
+        return (int) LazyProduct.readBits(slots, base, this.leafOffset[leaf], this.leafBits[leaf]);
+    }
+
+    private void writeLeaf(int leaf, long[] slots, int base, int value) {
+        if (this.leafBits[leaf] == 0) return;
+        LazyProduct.writeBits(slots, base, this.leafOffset[leaf], this.leafBits[leaf], value & 0xffffffffL);
+    }
+
+    /**
+     * Returns the number of entries in all the tables.
+     */
+    public long getEntryCount() {
+        long entries = 0;
+        for (NodeTable table: this.tables) entries += table.size;
+        return entries;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (NodeTable table: this.tables) bytes += table.getAllocatedBytes();
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        int size = this.size();
+        return String.format("%d tree-compressed states (%d longs each), %d leaves, %d entries, %.1f bytes per state",
+                size, this.width, this.leafOffset.length, this.getEntryCount(),
+                size == 0 ? 0 : (double) this.getAllocatedBytes() / size);
+    }
+
+    /**
+     * The pairs of a node, numbered densely in the order of insertion: the pairs are kept in pages and indexed by an
+     * open-addressing table of ids that is rebuilt from the pairs when it gets 3/4 full, so an entry takes 8 bytes and
+     * 1.33 to 2.67 ids.
+     */
+    private static final class NodeTable {
+
+        private static final int EMPTY = -1;
+        private static final int PAGE_SHIFT = 12;
+        private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+        private long[][] pages;
+        private int[] table;
+        private int size;
+
+        NodeTable() {
+            this.pages = new long[1][];
+            this.table = new int[16];
+            Arrays.fill(this.table, EMPTY);
+        }
+
+        int add(long pair) {
+            int mask = this.table.length - 1;
+            int pos = hash(pair) & mask;
+            while (this.table[pos] != EMPTY) {
+                int id = this.table[pos];
+                if (this.get(id) == pair) return id;
+                pos = (pos + 1) & mask;
+            }
+
+            int id = this.size++;
+            int page = id >>> PAGE_SHIFT;
+            if (page == this.pages.length) this.pages = Arrays.copyOf(this.pages, 2 * page);
+            if (this.pages[page] == null) this.pages[page] = new long[PAGE_SIZE];
+            this.pages[page][id & (PAGE_SIZE - 1)] = pair;
+            this.table[pos] = id;
+            if (4L * this.size > 3L * this.table.length) this.grow();
+            return id;
+        }
+
+        long get(int id) {
+            return this.pages[id >>> PAGE_SHIFT][id & (PAGE_SIZE - 1)];
+        }
+
+        private void grow() {
+            this.table = new int[2 * this.table.length];
+            Arrays.fill(this.table, EMPTY);
+            int mask = this.table.length - 1;
+            for (int id = 0; id < this.size; ++id) {
+                int pos = hash(this.get(id)) & mask;
+                while (this.table[pos] != EMPTY) pos = (pos + 1) & mask;
+                this.table[pos] = id;
+            }
+        }
+
+        private static int hash(long pair) {
+            pair ^= pair >>> 33;
+            pair *= 0xff51afd7ed558ccdL;
+            pair ^= pair >>> 33;
+            return (int) pair;
+        }
+
+        long getAllocatedBytes() {
+            long bytes = 4L * this.table.length;
+            for (long[] page: this.pages) if (page != null) bytes += 8L * page.length;
+            return bytes;
+        }
+
+    }
+
+}
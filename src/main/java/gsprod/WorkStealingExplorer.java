@@ -0,0 +1,131 @@
+package gsprod;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An asynchronous parallel exploration on a fork/join pool. There are no BFS levels: a task expands a batch of states
+ * and every state it claims in the shared ConcurrentStateStore goes to a new batch, which is forked to the worker's
+ * deque once full; idle workers steal batches from the others. So the throughput doesn't depend on the shape of the
+ * levels. The transitions are collected per worker and passed to the sink in chunks, under its lock; the numbering of
+ * states depends on timing.
+ */
+public class WorkStealingExplorer implements ProductExplorer {
+
+    private static final int BATCH_SIZE = 64;
+    private static final int FLUSH_SIZE = 4096;
+
+    private final int threads;
+    private final int log2Buckets;
+
+    public WorkStealingExplorer(int threads, int log2Buckets) {
+        if (threads < 1) throw new RuntimeException("The number of threads must be positive.");
+        this.threads = threads;
+        this.log2Buckets = log2Buckets;
+    }
+
+    @Override
+    public void explore(ProductLevel level, ProductSink product, boolean verbose) {
+        int width = level.getWidth();
+        ConcurrentStateStore visited = new ConcurrentStateStore(width, this.log2Buckets);
+
+        // state i of the store is state i + 1 of the product; 0 is the dummy initial state
+        long[] succ = new long[width];
+        int[] initial = new int[level.getInitialCount()];
+        int initialCount = 0;
+        for (int i = 0; i < level.getInitialCount(); ++i) {
+            level.encodeInitial(i, succ, 0);
+            int claimed = visited.claim(succ, 0);
+            if (claimed >= 0) initial[initialCount++] = claimed;
+            product.addTransition(0, level.getEpsilon(), (claimed >= 0 ? claimed : -claimed - 1) + 1);
+        }
+
+        // a worker runs one task at a time, so its own buffer needs no synchronization
+        ConcurrentLinkedQueue<ProductBuilder> allWorkerProducts = new ConcurrentLinkedQueue<>();
+        ThreadLocal<ProductBuilder> workerProducts = ThreadLocal.withInitial(() -> {
+            ProductBuilder workerProduct = new ProductBuilder();
+            allWorkerProducts.add(workerProduct);
+            return workerProduct;
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try {
+            pool.invoke(new ExpandTask(null, level, visited, product, workerProducts, initial, initialCount));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (ProductBuilder workerProduct: allWorkerProducts) workerProduct.drainTo(product);
+        if (verbose) System.out.println("visited store: " + visited);
+        product.setStateCount(visited.size() + 1);
+    }
+
+    private static class ExpandTask extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProductLevel level;
+        private final ConcurrentStateStore visited;
+        private final ProductSink sink;
+        private final ThreadLocal<ProductBuilder> workerProducts;
+        private final int[] batch;
+        private final int batchSize;
+
+        ExpandTask(CountedCompleter<?> parent, ProductLevel level, ConcurrentStateStore visited, ProductSink sink,
+                   ThreadLocal<ProductBuilder> workerProducts, int[] batch, int batchSize) {
+            super(parent);
+            this.level = level;
+            this.visited = visited;
+            this.sink = sink;
+            this.workerProducts = workerProducts;
+            this.batch = batch;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void compute() {
+            ProductBuilder product = this.workerProducts.get();
+            int width = this.level.getWidth();
+            long[] curr = new long[width];
+            long[] succ = new long[width];
+            int[][] next = { new int[BATCH_SIZE] };
+            int[] nextSize = { 0 };
+
+            for (int i = 0; i < this.batchSize; ++i) {
+                int source = this.batch[i];
+                this.visited.get(source, curr, 0);
+                this.level.expand(curr, succ, (label, slots, base) -> {
+                    int claimed = this.visited.claim(slots, base);
+                    if (claimed < 0) {
+                        product.addTransition(source + 1, label, -claimed);
+                        return;
+                    }
+
+                    product.addTransition(source + 1, label, claimed + 1);
+                    next[0][nextSize[0]++] = claimed;
+                    if (nextSize[0] == BATCH_SIZE) {
+                        this.fork(next[0], BATCH_SIZE);
+                        next[0] = new int[BATCH_SIZE];
+                        nextSize[0] = 0;
+                    }
+                });
+            }
+            if (nextSize[0] > 0) this.fork(next[0], nextSize[0]);
+            if (product.getTransitionCount() >= FLUSH_SIZE) {
+                synchronized (this.sink) {
+                    product.drainTo(this.sink);
+                }
+            }
+
+            this.tryComplete();
+        }
+
+        private void fork(int[] batch, int batchSize) {
+            this.addToPendingCount(1);
+            new ExpandTask(this, this.level, this.visited, this.sink, this.workerProducts, batch, batchSize).fork();
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+public class ApproximateStateSetTest {
+
+    private static final int STATES = 10000;
+
+    private static long[] state(int i) {
+        return new long[] { i, i * 0x9e3779b97f4a7c15L };
+    }
+
+    /**
+     * Adds the states twice to the set and checks that the second additions are rejected.
+     */
+    private static void addTwice(ApproximateStateSet set, int states) {
+        for (int i = 0; i < states; ++i) set.add(state(i), 0);
+        long size = set.size();
+        for (int i = 0; i < states; ++i) assertFalse(set.add(state(i), 0));
+        assertEquals(size, set.size());
+    }
+
+    @Test
+    public void hashCompactionKeepsEveryState() {
+        HashCompactionSet set = new HashCompactionSet(2, 1 << 20);
+        addTwice(set, STATES);
+        assertEquals(STATES, set.size());
+        assertTrue(set.getExpectedOmissions() > 0 && set.getExpectedOmissions() < 1e-9);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void hashCompactionFailsWhenFull() {
+        HashCompactionSet set = new HashCompactionSet(2, 16 * Long.BYTES);
+        for (int i = 0; i < 13; ++i) set.add(state(i), 0);
+    }
+
+    @Test
+    public void largeBitstateKeepsEveryState() {
+        BitstateSet set = new BitstateSet(2, 1 << 20, 3);
+        addTwice(set, STATES);
+        assertEquals(STATES, set.size());
+        assertTrue(set.getExpectedOmissions() < 1e-3);
+    }
+
+    @Test
+    public void smallBitstateOmitsStates() {
+        BitstateSet set = new BitstateSet(2, Long.BYTES, 1);
+        addTwice(set, 1000);
+        // at most one state per bit, and a new state after the first is omitted with the fraction of bits set
+        assertTrue(set.size() <= Long.SIZE);
+        assertTrue(set.getExpectedOmissions() > 1);
+        assertTrue(set.getCompleteProbability() < 0.5);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void bitstateRejectsNoHashes() {
+        new BitstateSet(2, 1 << 10, 0);
+    }
+
+    /**
+     * Checks that the approximate exploration with the settings changed by mode counts the sequential product and
+     * reports its visited set.
+     */
+    private static void assertExact(Consumer<ProductSettings> mode, String set) {
+        for (String[] files: ProductTesting.NETS) {
+            ProductStatistics expected = ProductTesting.explore(files, new ProductSettings());
+            for (boolean lazy: new boolean[] { false, true }) {
+                ProductSettings settings = new ProductSettings();
+                settings.setLazy(lazy);
+                mode.accept(settings);
+                ProductStatistics actual = new ProductStatistics();
+                GSQProduct.generalSquareProduct(ProductTesting.readNet(files), settings, actual, false);
+
+                assertEquals("states of " + files[0], expected.getStateCount(), actual.getStateCount());
+                assertEquals("transitions of " + files[0], expected.getTransitionCount(), actual.getTransitionCount());
+                assertEquals("deadlocks of " + files[0], expected.getDeadlockCount(), actual.getDeadlockCount());
+                assertEquals("max out-degree of " + files[0], expected.getMaxOutDegree(), actual.getMaxOutDegree());
+                assertEquals(1, actual.getReports().size());
+                assertTrue(actual.getReports().get(0), actual.getReports().get(0).startsWith("visited set: " + set));
+            }
+        }
+    }
+
+    @Test
+    public void largeHashCompactionFindsTheProduct() {
+        assertExact(settings -> settings.setHashCompactionBytes(1 << 20), "hash compaction");
+    }
+
+    @Test
+    public void largeBitstateFindsTheProduct() {
+        assertExact(settings -> {
+            settings.setBitstateBytes(1 << 20);
+            settings.setBitstateHashes(3);
+        }, "bitstate");
+    }
+
+}
@@ -0,0 +1,77 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class CompositionSchedulerTest {
+
+    private static long countFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void spillsAndReadsBackAProduct() throws IOException {
+        AutomataNet net = ProductTesting.readNet(ProductTesting.NETS[1]);
+        ActionTable actions = net.getActionTable();
+        Automaton product = GSQProduct.generalSquareProduct(net, new ProductSettings(), false);
+        CompiledAutomaton compiled = CompiledAutomaton.compile(product, actions);
+
+        Path dir = Files.createTempDirectory("gsq");
+        CompositionScheduler scheduler = new CompositionScheduler(actions, 1, dir);
+        CompositionScheduler.Product held = scheduler.hold(compiled);
+        assertTrue(held.isSpilled());
+        assertEquals(1, countFiles(dir));
+
+        CompiledAutomaton read = scheduler.take(held);
+        assertEquals(0, countFiles(dir));
+        assertEquals(compiled.getStateCount(), read.getStateCount());
+        assertEquals(compiled.getTransitionCount(), read.getTransitionCount());
+        for (int state = 0; state < compiled.getStateCount(); ++state) {
+            assertEquals(compiled.getStateName(state), read.getStateName(state));
+            assertEquals(compiled.firstTransition(state), read.firstTransition(state));
+            assertEquals(compiled.lastTransition(state), read.lastTransition(state));
+        }
+        for (int trans = 0; trans < compiled.getTransitionCount(); ++trans) {
+            assertEquals(compiled.getLabel(trans), read.getLabel(trans));
+            assertEquals(compiled.getTarget(trans), read.getTarget(trans));
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void keepsAProductWithinTheBudget() {
+        AutomataNet net = ProductTesting.readNet(ProductTesting.NETS[1]);
+        CompiledAutomaton compiled = CompiledAutomaton.compile(net.getAutomata().get(1), net.getActionTable());
+        CompositionScheduler scheduler = new CompositionScheduler(net.getActionTable(), 0, null);
+        assertFalse(scheduler.isLimited());
+        assertFalse(scheduler.hold(compiled).isSpilled());
+    }
+
+    @Test
+    public void findsTheSequentialProductWithATinyHeapBudget() throws IOException {
+        Path dir = Files.createTempDirectory("gsq");
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setHeapBudget(1);
+            settings.setSpillDir(dir);
+        });
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setHeapBudget(1);
+            settings.setSpillDir(dir);
+            settings.setSubtreeThreads(4);
+        });
+        // the spilled products are deleted once read back
+        assertEquals(0, countFiles(dir));
+        Files.delete(dir);
+    }
+
+}
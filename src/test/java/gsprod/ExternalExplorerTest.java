@@ -0,0 +1,34 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ExternalExplorerTest {
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setEngine(ProductSettings.Engine.EXTERNAL));
+    }
+
+    @Test
+    public void findsTheSequentialProductWithATinyBuffer() throws IOException {
+        Path dir = Files.createTempDirectory("gsq");
+        // a buffer of one transition, so that every transition is a run of its own
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setEngine(ProductSettings.Engine.EXTERNAL);
+            settings.setExternalBufferBytes(1);
+            settings.setExternalDir(dir);
+        });
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(dir);
+    }
+
+}
@@ -0,0 +1,53 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class FrontierExplorerTest {
+
+    private static ProductBuilder explore(String[] files, ProductSettings settings) {
+        ProductBuilder product = new ProductBuilder();
+        GSQProduct.generalSquareProduct(ProductTesting.readNet(files), settings, product, false);
+        return product;
+    }
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setEngine(ProductSettings.Engine.FRONTIER));
+    }
+
+    @Test
+    public void numbersTheStatesAsTheSequentialSearch() throws IOException {
+        Path dir = Files.createTempDirectory("gsq");
+        for (String[] files: ProductTesting.NETS) {
+            ProductBuilder expected = explore(files, new ProductSettings());
+            for (int layers: new int[] { 1, 2, 5 }) {
+                ProductSettings settings = new ProductSettings();
+                settings.setEngine(ProductSettings.Engine.FRONTIER);
+                settings.setFrontierLayers(layers);
+                settings.setExternalDir(dir);
+                ProductBuilder actual = explore(files, settings);
+
+                assertEquals(expected.getStateCount(), actual.getStateCount());
+                assertEquals(expected.getTransitionCount(), actual.getTransitionCount());
+                for (int i = 0; i < expected.getTransitionCount(); ++i) {
+                    String transition = files[0] + " with " + layers + " layers, transition " + i;
+                    assertEquals(transition, expected.getSource(i), actual.getSource(i));
+                    assertEquals(transition, expected.getLabel(i), actual.getLabel(i));
+                    assertEquals(transition, expected.getTarget(i), actual.getTarget(i));
+                }
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(dir);
+    }
+
+}
@@ -0,0 +1,62 @@
+package gsprod;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the ids, the contents and the counters of HeapStateStore across the migrations of its table.
+ */
+public class HeapStateStoreTest {
+
+    private static final int STATES = 20000;
+
+    private static long[] state(int i) {
+        return new long[] { i, 31L * i ^ 0x5555L };
+    }
+
+    @Test
+    public void denseIdsSurviveMigrations() {
+        HeapStateStore store = new HeapStateStore(2);
+        for (int i = 0; i < STATES; ++i) assertEquals(i, store.add(state(i), 0));
+        assertEquals(STATES, store.size());
+
+        // the second additions find the states, whatever table they are in
+        for (int i = 0; i < STATES; ++i) assertEquals(i, store.add(state(i), 0));
+        assertEquals(STATES, store.size());
+
+        long[] slots = new long[3];
+        for (int i = 0; i < STATES; ++i) {
+            store.get(i, slots, 1);
+            assertArrayEquals(state(i), new long[] { slots[1], slots[2] });
+        }
+    }
+
+    @Test
+    public void indexOfDoesntAdd() {
+        HeapStateStore store = new HeapStateStore(2);
+        for (int i = 0; i < STATES; i += 2) store.add(state(i), 0);
+        for (int i = 0; i < STATES; ++i) assertEquals(i % 2 == 0 ? i / 2 : -1, store.indexOf(state(i), 0));
+        assertEquals(STATES / 2, store.size());
+    }
+
+    @Test
+    public void countersCountOneProbeSequencePerLookup() {
+        HeapStateStore store = new HeapStateStore(2);
+        for (int i = 0; i < STATES; ++i) store.add(state(i), 0);
+        for (int i = 0; i < STATES; ++i) store.add(state(i), 0);
+        for (int i = 0; i < STATES; ++i) store.indexOf(state(STATES + i), 0);
+
+        assertEquals(3L * STATES, store.getLookups());
+        assertEquals(STATES, store.getHits());
+        assertEquals(2L * STATES, store.getMisses());
+        // a hit probes at least its own bucket, and the table is at most half full, so the probe sequences stay short
+        assertTrue(store.getAverageProbeLength() >= 1.0 / 3);
+        assertTrue(store.getAverageProbeLength() < 4);
+        assertTrue(store.getMaxProbeLength() >= 1);
+        assertTrue(store.getAllocatedBytes() >= 16L * STATES);
+    }
+
+}
@@ -0,0 +1,75 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LazyProductTest {
+
+    /**
+     * Checks hasLabel of the lazy products of the subtrees two levels deep, asking for the synchronizing labels in
+     * the given order, against the labels of the materialized products.
+     */
+    private static void assertLabelsOfSubtrees(boolean reversed) {
+        AutomataNet net = ProductTesting.readNet(ProductTesting.NETS[1]);
+        ActionTable actions = net.getActionTable();
+        Automaton root = net.getAutomata().get(0);
+        ArrayList<Automaton> children = new ArrayList<>(net.getAutomata().subList(1, net.getAutomata().size()));
+
+        int subtrees = 0;
+        for (Automaton child: GSQProduct.discoverChildren(root, children, actions)) {
+            ArrayList<Automaton> grandchildren = GSQProduct.otherChildren(children, child);
+            ArrayList<Automaton> syncGrandchildren = GSQProduct.discoverChildren(child, grandchildren, actions);
+            if (syncGrandchildren.isEmpty()) continue;
+            ++subtrees;
+
+            ImplicitAutomaton[] operands = new ImplicitAutomaton[syncGrandchildren.size()];
+            for (int i = 0; i < operands.length; ++i) operands[i] = CompiledAutomaton.compile(syncGrandchildren.get(i), actions);
+            LazyProduct lazy = new LazyProduct("lazy", CompiledAutomaton.compile(child, actions), operands, actions);
+
+            HashSet<String> expected = new HashSet<>();
+            Automaton product = GSQProduct.generalSquareProduct(child, grandchildren, actions, false);
+            for (ArrayList<Transition> transitions: product.getStateToTransitions().values())
+                for (Transition trans: transitions) expected.add(trans.getLabel());
+
+            List<Integer> labels = new ArrayList<>();
+            for (int label = lazy.getLabelSet().nextSetBit(0); label >= 0; label = lazy.getLabelSet().nextSetBit(label + 1))
+                if (actions.isSync(label)) labels.add(reversed ? 0 : labels.size(), label);
+            for (int label: labels)
+                assertEquals(actions.getName(label), expected.contains(actions.getName(label)), lazy.hasLabel(label));
+            // the answers stay the same once the search is over
+            for (int label: labels)
+                assertEquals(actions.getName(label), expected.contains(actions.getName(label)), lazy.hasLabel(label));
+        }
+        assertTrue(subtrees > 0);
+    }
+
+    @Test
+    public void decidesTheSynchronizingLabels() {
+        assertLabelsOfSubtrees(false);
+        assertLabelsOfSubtrees(true);
+    }
+
+    @Test
+    public void readsAndWritesBitsAcrossWords() {
+        long[] slots = new long[3];
+        LazyProduct.writeBits(slots, 1, 60, 10, 0x3ff);
+        assertEquals(0xfL << 60, slots[1]);
+        assertEquals(0x3fL, slots[2]);
+        assertEquals(0x3ffL, LazyProduct.readBits(slots, 1, 60, 10));
+        LazyProduct.writeBits(slots, 1, 62, 4, 0x5);
+        assertEquals(0x3ff & ~0x3c | 0x5 << 2, LazyProduct.readBits(slots, 1, 60, 10));
+        assertEquals(0, slots[0]);
+    }
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setLazy(true));
+    }
+
+}
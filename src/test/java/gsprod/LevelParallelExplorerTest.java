@@ -0,0 +1,23 @@
+package gsprod;
+
+import org.junit.Test;
+
+public class LevelParallelExplorerTest {
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setEngine(ProductSettings.Engine.PARALLEL);
+            settings.setThreads(4);
+        });
+    }
+
+    @Test
+    public void findsTheSequentialProductWithOneThread() {
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setEngine(ProductSettings.Engine.PARALLEL);
+            settings.setThreads(1);
+        });
+    }
+
+}
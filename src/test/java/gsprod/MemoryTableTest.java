@@ -0,0 +1,138 @@
+package gsprod;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MemoryTableTest {
+
+    /**
+     * Returns a table of count copies of the largest automaton of the dumped net.
+     */
+    private static MemoryTable table(int count) {
+        AutomataNet net = ProductTesting.readNet(ProductTesting.NETS[1]);
+        Automaton largest = net.getAutomata().get(0);
+        for (Automaton automaton: net.getAutomata()) if (automaton.getStates().size() > largest.getStates().size()) largest = automaton;
+        CompiledAutomaton[] children = new CompiledAutomaton[count];
+        Arrays.fill(children, CompiledAutomaton.compile(largest, net.getActionTable()));
+        return new MemoryTable(children);
+    }
+
+    /**
+     * Interns the units with every child in state 0 but at most two, and with every child in state 1; checks that
+     * equal units get equal ids and that every unit is read back as it was interned.
+     */
+    private static void assertInterned(MemoryTable table, int count) {
+        ArrayList<long[]> units = new ArrayList<>();
+        for (int first = 0; first < count; ++first)
+            for (int second = first; second < count; ++second) {
+                long[] unit = new long[table.getWidth()];
+                table.setChildMemory(unit, 0, first, 1);
+                table.setChildMemory(unit, 0, second, 2);
+                units.add(unit);
+            }
+        long[] full = new long[table.getWidth()];
+        for (int child = 0; child < count; ++child) table.setChildMemory(full, 0, child, 1);
+        units.add(full);
+        units.add(new long[table.getWidth()]);
+
+        for (int i = 0; i < units.size(); ++i) assertEquals(i, table.intern(units.get(i), 0));
+        for (int i = 0; i < units.size(); ++i) assertEquals(i, table.intern(units.get(i).clone(), 0));
+        assertEquals(units.size(), table.size());
+
+        long[] memory = new long[table.getWidth() + 2];
+        for (int i = 0; i < units.size(); ++i) {
+            Arrays.fill(memory, -1L);
+            table.get(i, memory, 1);
+            assertArrayEquals(units.get(i), Arrays.copyOfRange(memory, 1, 1 + table.getWidth()));
+            assertEquals(-1L, memory[0]);
+            assertEquals(-1L, memory[memory.length - 1]);
+        }
+        assertEquals(2, table.getChildMemory(units.get(count - 1), 0, count - 1));
+    }
+
+    @Test
+    public void internsDenseUnits() {
+        MemoryTable table = table(3);
+        assertFalse(table.isSparse());
+        assertInterned(table, 3);
+    }
+
+    @Test
+    public void internsSparseUnits() {
+        MemoryTable table = table(MemoryTable.SPARSE_BRANCHING + 4);
+        assertTrue(table.isSparse());
+        assertInterned(table, MemoryTable.SPARSE_BRANCHING + 4);
+    }
+
+    /**
+     * Returns a net of a root that synchronizes with its children one after another and children of 16 states, which
+     * move by the synchronization and then by local actions. So the dense memory units take more than a long and few
+     * of them are reachable.
+     */
+    private static AutomataNet wideNet(int width) {
+        AutomataNet net = new AutomataNet();
+        ActionTable actions = net.getActionTable();
+        String tau = actions.canonical("tau");
+        actions.intern(tau);
+        ArrayList<String> rootStates = new ArrayList<>();
+        ArrayList<Transition> rootTransitions = new ArrayList<>();
+        for (int i = 0; i <= width; ++i) rootStates.add("r" + i);
+        for (int i = 0; i < width; ++i) {
+            String label = actions.canonical("a" + i);
+            actions.addSync(label);
+            rootTransitions.add(new Transition("r" + i, label, "r" + (i + 1)));
+        }
+        net.getAutomata().add(new Automaton(rootStates, rootTransitions));
+
+        for (int i = 0; i < width; ++i) {
+            ArrayList<String> states = new ArrayList<>();
+            ArrayList<Transition> transitions = new ArrayList<>();
+            for (int j = 0; j < 16; ++j) states.add("c" + j);
+            transitions.add(new Transition("c0", actions.canonical("a" + i), "c1"));
+            for (int j = 1; j < 15; ++j) transitions.add(new Transition("c" + j, tau, "c" + (j + 1)));
+            net.getAutomata().add(new Automaton(states, transitions));
+        }
+        return net;
+    }
+
+    @Test
+    public void sharesTheUnitsOfAWideLevel() {
+        AutomataNet net = wideNet(2 * MemoryTable.SPARSE_BRANCHING);
+        ArrayList<Automaton> children = new ArrayList<>(net.getAutomata().subList(1, net.getAutomata().size()));
+        ProductLevel level = new ProductLevel(net.getAutomata().get(0), children, net.getActionTable(),
+                ProductLevel.MemoryLayout.NARROWEST);
+        assertTrue(level.getCodec().getMemories() != null);
+
+        ProductTesting.ProductShape expected = new ProductTesting.ProductShape(net.getActionTable());
+        new SequentialExplorer(new ProductSettings()).explore(new ProductLevel(net.getAutomata().get(0), children,
+                net.getActionTable(), ProductLevel.MemoryLayout.INLINE), expected, false);
+        assertTrue(expected.getStateCount() > 16 * MemoryTable.SPARSE_BRANCHING);
+        for (ProductLevel.MemoryLayout memory: ProductLevel.MemoryLayout.values()) {
+            ProductTesting.ProductShape actual = new ProductTesting.ProductShape(net.getActionTable());
+            new SequentialExplorer(new ProductSettings()).explore(new ProductLevel(net.getAutomata().get(0), children,
+                    net.getActionTable(), memory), actual, false);
+            expected.assertSame(memory.toString(), actual);
+        }
+    }
+
+    @Test
+    public void keepsTheUnitsInTheStatesThatLeaveTheHeap() {
+        ProductSettings settings = new ProductSettings();
+        assertEquals(ProductLevel.MemoryLayout.NARROWEST, settings.getMemoryLayout());
+        settings.setOffHeapBudget(1 << 20);
+        assertEquals(ProductLevel.MemoryLayout.INLINE, settings.getMemoryLayout());
+    }
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setSharedMemory(true));
+    }
+
+}
@@ -0,0 +1,79 @@
+package gsprod;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OffHeapStateStoreTest {
+
+    private static long[] state(int i) {
+        return new long[] { i, -7L * i, Long.MIN_VALUE + i };
+    }
+
+    private static void fill(OffHeapStateStore store) {
+        for (int i = 0; i < store.getCapacity(); ++i) assertEquals(i, store.add(state(i), 0));
+        for (int i = 0; i < store.getCapacity(); ++i) assertEquals(i, store.add(state(i), 0));
+        assertEquals(store.getCapacity(), store.size());
+
+        long[] slots = new long[4];
+        for (int i = 0; i < store.getCapacity(); ++i) {
+            store.get(i, slots, 1);
+            assertArrayEquals(state(i), Arrays.copyOfRange(slots, 1, 4));
+        }
+    }
+
+    @Test
+    public void keepsTheStatesInDirectMemory() {
+        OffHeapStateStore store = new OffHeapStateStore(3, new OffHeapArena(1 << 20, null));
+        assertTrue(store.getCapacity() > 1000);
+        assertTrue(store.getAllocatedBytes() <= 1 << 20);
+        fill(store);
+    }
+
+    @Test
+    public void keepsTheStatesInAMappedFile() throws IOException {
+        Path dir = Files.createTempDirectory("gsq");
+        fill(new OffHeapStateStore(3, new OffHeapArena(1 << 20, dir)));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void reusesTheArenaAfterClearingIt() {
+        OffHeapArena arena = new OffHeapArena(1 << 16, null);
+        fill(new OffHeapStateStore(3, arena));
+        OffHeapStateStore store = new OffHeapStateStore(3, arena);
+        assertEquals(0, store.size());
+        fill(store);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsTooSmallABudget() {
+        new OffHeapStateStore(3, new OffHeapArena(8, null));
+    }
+
+    @Test
+    public void failsWhenFull() {
+        OffHeapStateStore store = new OffHeapStateStore(3, new OffHeapArena(4096, null));
+        fill(store);
+        try {
+            store.add(state(store.getCapacity()), 0);
+            fail("added a state beyond the capacity");
+        } catch (RuntimeException rex) {
+            assertTrue(rex.getMessage().contains("full"));
+        }
+    }
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setOffHeapBudget(1 << 20));
+    }
+
+}
@@ -0,0 +1,27 @@
+package gsprod;
+
+import org.junit.Test;
+
+public class ParallelSubtreesTest {
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setSubtreeThreads(4));
+    }
+
+    @Test
+    public void buildsTheSequentialAutomaton() {
+        for (String[] files: ProductTesting.NETS) {
+            AutomataNet net = ProductTesting.readNet(files);
+            ProductTesting.ProductShape expected = ProductTesting.shapeOf(
+                    GSQProduct.generalSquareProduct(net, new ProductSettings(), false), net.getActionTable());
+
+            AutomataNet parallelNet = ProductTesting.readNet(files);
+            ProductSettings settings = new ProductSettings();
+            settings.setSubtreeThreads(4);
+            expected.assertSame(files[0], ProductTesting.shapeOf(
+                    GSQProduct.generalSquareProduct(parallelNet, settings, false), parallelNet.getActionTable()));
+        }
+    }
+
+}
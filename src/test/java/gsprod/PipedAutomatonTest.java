@@ -0,0 +1,85 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class PipedAutomatonTest {
+
+    /**
+     * Returns the level of the root of the simple example and its sync children.
+     */
+    private static ProductLevel simpleLevel() {
+        AutomataNet net = ProductTesting.readNet(ProductTesting.NETS[0]);
+        ActionTable actions = net.getActionTable();
+        Automaton root = net.getAutomata().get(0);
+        ArrayList<Automaton> children = new ArrayList<>(net.getAutomata().subList(1, net.getAutomata().size()));
+        return new ProductLevel(root, GSQProduct.discoverChildren(root, children, actions), actions);
+    }
+
+    private static ProductTesting.ProductShape shapeOf(CompiledAutomaton automaton) {
+        ProductTesting.ProductShape shape = new ProductTesting.ProductShape();
+        for (int state = 0; state < automaton.getStateCount(); ++state)
+            for (int trans = automaton.firstTransition(state); trans < automaton.lastTransition(state); ++trans)
+                shape.addTransition(state, automaton.getLabel(trans), automaton.getTarget(trans));
+        shape.setStateCount(automaton.getStateCount());
+        return shape;
+    }
+
+    @Test
+    public void producesTheProductOfTheLevel() {
+        ProductTesting.ProductShape expected = new ProductTesting.ProductShape();
+        new SequentialExplorer(new ProductSettings()).explore(simpleLevel(), expected, false);
+
+        PipedAutomaton piped = new PipedAutomaton("piped", simpleLevel());
+        piped.produce();
+        assertTrue(piped.isComplete());
+        expected.assertSame("piped", shapeOf(piped));
+    }
+
+    @Test
+    public void isReadWhileItIsProduced() throws InterruptedException {
+        ProductTesting.ProductShape expected = new ProductTesting.ProductShape();
+        new SequentialExplorer(new ProductSettings()).explore(simpleLevel(), expected, false);
+
+        PipedAutomaton piped = new PipedAutomaton("piped", simpleLevel());
+        Thread producer = new Thread(piped::produce);
+        producer.start();
+
+        // follow the transitions from the initial state, each read waiting until its state is closed
+        BitSet reached = new BitSet();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        reached.set(0);
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int trans = piped.firstTransition(state); trans < piped.lastTransition(state); ++trans) {
+                int target = piped.getTarget(trans);
+                if (!reached.get(target)) {
+                    reached.set(target);
+                    queue.add(target);
+                }
+            }
+        }
+        producer.join();
+
+        assertEquals(expected.getStateCount(), reached.cardinality());
+        expected.assertSame("piped", shapeOf(piped));
+    }
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setPipelined(true));
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setPipelined(true);
+            settings.setEngine(ProductSettings.Engine.PARALLEL);
+            settings.setThreads(4);
+        });
+    }
+
+}
@@ -0,0 +1,62 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+public class ProductStatisticsTest {
+
+    @Test
+    public void countsTheProductWithoutBuildingIt() {
+        for (String[] files: ProductTesting.NETS) {
+            AutomataNet net = ProductTesting.readNet(files);
+            ActionTable actions = net.getActionTable();
+            Automaton product = GSQProduct.generalSquareProduct(net, new ProductSettings(), false);
+
+            HashMap<String, Long> labelCounts = new HashMap<>();
+            int maxOutDegree = 0;
+            int deadlocks = 0;
+            for (String state: product.getStates()) {
+                ArrayList<Transition> transitions = product.getStateToTransitions().get(state);
+                maxOutDegree = Math.max(maxOutDegree, transitions.size());
+                if (transitions.isEmpty()) ++deadlocks;
+                for (Transition trans: transitions) labelCounts.merge(trans.getLabel(), 1L, Long::sum);
+            }
+
+            ProductStatistics stats = new ProductStatistics();
+            GSQProduct.generalSquareProduct(ProductTesting.readNet(files), new ProductSettings(), stats, false);
+            assertEquals(product.getStates().size(), stats.getStateCount());
+            assertEquals(product.countTransitions(), stats.getTransitionCount());
+            assertEquals(maxOutDegree, stats.getMaxOutDegree());
+            assertEquals(deadlocks, stats.getDeadlockCount());
+            assertEquals((double) product.countTransitions() / product.getStates().size(), stats.getAverageOutDegree(), 1e-9);
+            for (int label = 0; label < actions.size(); ++label)
+                assertEquals(actions.getName(label), (long) labelCounts.getOrDefault(actions.getName(label), 0L),
+                        stats.getLabelCount(label));
+        }
+    }
+
+    @Test
+    public void printsTheDegreesAndTheLabels() {
+        ActionTable actions = new ActionTable();
+        int a = actions.intern("a");
+        int b = actions.intern("b");
+        actions.intern("c");
+
+        ProductStatistics stats = new ProductStatistics();
+        stats.addTransition(0, a, 1);
+        stats.addTransition(0, b, 2);
+        stats.addTransition(1, a, 0);
+        stats.setStateCount(100);
+        stats.addReport("a report");
+
+        assertEquals(2, stats.getMaxOutDegree());
+        assertEquals(98, stats.getDeadlockCount());
+        assertEquals("max out-degree: 2\naverage out-degree: " + String.format("%.3f", 0.03) + "\ndeadlock states: 98\n"
+                + "transitions per label:\n  a: 2\n  b: 1\na report", stats.toString(actions));
+    }
+
+}
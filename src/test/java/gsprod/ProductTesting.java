@@ -0,0 +1,140 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * The nets and the checks shared by the tests of the engines and the modes of ProductSettings: a product found with
+ * some settings must be the sequential one up to the numbering of its states.
+ */
+final class ProductTesting {
+
+    static final String[][] NETS = {
+            { "examples/simple_example/acts", "examples/simple_example/mod0", "examples/simple_example/mod1",
+                    "examples/simple_example/mod2" },
+            { "src/test/resources/dumped_net/n1Sync", "src/test/resources/dumped_net/n1M1",
+                    "src/test/resources/dumped_net/n1M2", "src/test/resources/dumped_net/n1M3",
+                    "src/test/resources/dumped_net/n1M4", "src/test/resources/dumped_net/n1M5",
+                    "src/test/resources/dumped_net/n1M6", "src/test/resources/dumped_net/n1M7",
+                    "src/test/resources/dumped_net/n1M8", "src/test/resources/dumped_net/n1M9" }
+    };
+
+    private ProductTesting() {
+    }
+
+    /**
+     * Reads the net from the action file and the model files, the first model being the root.
+     */
+    static AutomataNet readNet(String[] files) {
+        AutomataNet net = new AutomataNet();
+        net.readActions(files[0]);
+        for (int i = 1; i < files.length; ++i) net.readAutomaton(files[i]);
+        return net;
+    }
+
+    static ProductShape explore(String[] files, ProductSettings settings) {
+        AutomataNet net = readNet(files);
+        ProductShape shape = new ProductShape(net.getActionTable());
+        GSQProduct.generalSquareProduct(net, settings, shape, false);
+        return shape;
+    }
+
+    /**
+     * Returns the shape of the automaton, its initial state being state 0 and the others numbered in their order.
+     */
+    static ProductShape shapeOf(Automaton automaton, ActionTable actions) {
+        ArrayList<String> states = new ArrayList<>(automaton.getStates());
+        states.remove(automaton.getInitial());
+        states.add(0, automaton.getInitial());
+        HashMap<String, Integer> ids = new HashMap<>();
+        for (String state: states) ids.put(state, ids.size());
+
+        ProductShape shape = new ProductShape(actions);
+        for (String state: states)
+            for (Transition trans: automaton.getStateToTransitions().get(state))
+                shape.addTransition(ids.get(state), actions.getId(trans.getLabel()), ids.get(trans.getTarget()));
+        shape.setStateCount(states.size());
+        return shape;
+    }
+
+    /**
+     * Checks the product of every net with the settings changed by mode against the sequential one.
+     */
+    static void assertSameProduct(Consumer<ProductSettings> mode) {
+        for (String[] files: NETS) {
+            ProductShape expected = explore(files, new ProductSettings());
+            assertTrue("no product of " + files[0], expected.getStateCount() > 1);
+            ProductSettings settings = new ProductSettings();
+            mode.accept(settings);
+            expected.assertSame(files[0], explore(files, settings));
+        }
+    }
+
+    /**
+     * A sink that keeps the whole product and describes it independently of the numbering of its states: each state
+     * by the sorted labels of its outgoing and of its incoming transitions, the initial state first and the others
+     * sorted. The labels are described by their names if the shape has the action table, so that the products of
+     * different nets can be compared, and by their ids otherwise.
+     */
+    static class ProductShape extends ProductStatistics {
+
+        private final ActionTable actions;
+        private final ArrayList<int[]> transitions = new ArrayList<>();
+
+        ProductShape() {
+            this(null);
+        }
+
+        ProductShape(ActionTable actions) {
+            this.actions = actions;
+        }
+
+        @Override
+        public void addTransition(int source, int label, int target) {
+            super.addTransition(source, label, target);
+            this.transitions.add(new int[] { source, label, target });
+        }
+
+        /**
+         * Checks that the states are numbered densely and returns the descriptions of the states.
+         */
+        ArrayList<String> getStates() {
+            int stateCount = this.getStateCount();
+            ArrayList<ArrayList<String>> outLabels = new ArrayList<>();
+            ArrayList<ArrayList<String>> inLabels = new ArrayList<>();
+            for (int i = 0; i < stateCount; ++i) {
+                outLabels.add(new ArrayList<>());
+                inLabels.add(new ArrayList<>());
+            }
+            for (int[] transition: this.transitions) {
+                assertTrue("source out of range", transition[0] >= 0 && transition[0] < stateCount);
+                assertTrue("target out of range", transition[2] >= 0 && transition[2] < stateCount);
+                String label = this.actions == null ? String.valueOf(transition[1]) : this.actions.getName(transition[1]);
+                outLabels.get(transition[0]).add(label);
+                inLabels.get(transition[2]).add(label);
+            }
+
+            ArrayList<String> states = new ArrayList<>();
+            for (int i = 0; i < stateCount; ++i) {
+                outLabels.get(i).sort(null);
+                inLabels.get(i).sort(null);
+                states.add(outLabels.get(i) + " / " + inLabels.get(i));
+            }
+            states.subList(1, stateCount).sort(null);
+            return states;
+        }
+
+        void assertSame(String name, ProductShape actual) {
+            assertEquals("states of " + name, this.getStateCount(), actual.getStateCount());
+            assertEquals("transitions of " + name, this.getTransitionCount(), actual.getTransitionCount());
+            assertEquals("deadlocks of " + name, this.getDeadlockCount(), actual.getDeadlockCount());
+            assertEquals("product of " + name, this.getStates(), actual.getStates());
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProductWriterTest {
+
+    private static final Pattern AUT_TRANSITION = Pattern.compile("\\((\\d+),\"([^\"]*)\",(\\d+)\\)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ProductWriter explore(String[] files, Path file) {
+        AutomataNet net = ProductTesting.readNet(files);
+        try (ProductWriter writer = new ProductWriter(file, ProductWriter.formatOf(file), net.getActionTable())) {
+            GSQProduct.generalSquareProduct(net, new ProductSettings(), writer, false);
+            return writer;
+        }
+    }
+
+    /**
+     * Reads a model file back into a net with the actions of files.
+     */
+    private static ProductTesting.ProductShape readDump(String[] files, Path file) {
+        AutomataNet net = new AutomataNet();
+        net.readActions(files[0]);
+        return ProductTesting.shapeOf(net.readAutomaton(file.toString()), net.getActionTable());
+    }
+
+    @Test
+    public void writesWhatDumpFileWrites() throws IOException {
+        for (String[] files: ProductTesting.NETS) {
+            AutomataNet net = ProductTesting.readNet(files);
+            AutomataNet baseline = new AutomataNet();
+            Automaton product = GSQProduct.generalSquareProduct(net, new ProductSettings(), false);
+            baseline.getAutomata().add(product);
+            String prefix = this.folder.getRoot().toPath().resolve("base").toString();
+            baseline.dumpFile(prefix);
+            ProductTesting.ProductShape expected = readDump(files, Path.of(prefix + "M" + product.getName()));
+
+            Path file = this.folder.newFile().toPath();
+            ProductWriter writer = explore(files, file);
+            assertEquals(product.getStates().size(), writer.getStateCount());
+            assertEquals(product.countTransitions(), writer.getTransitionCount());
+            expected.assertSame(files[0], readDump(files, file));
+            expected.assertSame(files[0], ProductTesting.explore(files, new ProductSettings()));
+        }
+    }
+
+    @Test
+    public void writesTheAldebaranFormat() throws IOException {
+        for (String[] files: ProductTesting.NETS) {
+            Path file = this.folder.getRoot().toPath().resolve("product.aut");
+            ProductWriter writer = explore(files, file);
+
+            List<String> lines = Files.readAllLines(file);
+            assertEquals("des (0, " + writer.getTransitionCount() + ", " + writer.getStateCount() + ")", lines.get(0).trim());
+            assertEquals(writer.getTransitionCount(), lines.size() - 1);
+
+            ActionTable actions = ProductTesting.readNet(files).getActionTable();
+            ProductTesting.ProductShape shape = new ProductTesting.ProductShape(actions);
+            for (String line: lines.subList(1, lines.size())) {
+                Matcher matcher = AUT_TRANSITION.matcher(line);
+                assertTrue(line, matcher.matches());
+                shape.addTransition(Integer.parseInt(matcher.group(1)), actions.intern(matcher.group(2)),
+                        Integer.parseInt(matcher.group(3)));
+            }
+            shape.setStateCount(writer.getStateCount());
+            ProductTesting.explore(files, new ProductSettings()).assertSame(files[0], shape);
+        }
+    }
+
+    @Test
+    public void recognizesTheFormats() {
+        assertEquals(ProductWriter.Format.AUT, ProductWriter.formatOf(Path.of("dir", "product.aut")));
+        assertEquals(ProductWriter.Format.DUMP, ProductWriter.formatOf(Path.of("dir.aut", "productM1")));
+    }
+
+}
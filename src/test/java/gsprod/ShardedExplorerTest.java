@@ -0,0 +1,12 @@
+package gsprod;
+
+import org.junit.Test;
+
+public class ShardedExplorerTest {
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setEngine(ProductSettings.Engine.SHARDED));
+    }
+
+}
@@ -0,0 +1,109 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StateCacheTest {
+
+    private static long[] state(int i) {
+        return new long[] { i, ~i };
+    }
+
+    /**
+     * Returns a cache of the smallest capacity, 16, holding the states 0 to 15 with their numbers as ids, the depths
+     * 16 to 1, unpinned in their order.
+     */
+    private static StateCache fullCache(StateCache.Policy policy) {
+        StateCache cache = new StateCache(2, 1, policy);
+        assertEquals(16, cache.getCapacity());
+        for (int i = 0; i < 16; ++i) cache.unpin(cache.addPinned(state(i), 0, i, 16 - i));
+        return cache;
+    }
+
+    @Test
+    public void findsTheCachedStates() {
+        StateCache cache = fullCache(StateCache.Policy.LRU);
+        assertEquals(16, cache.size());
+        for (int i = 0; i < 16; ++i) assertEquals(i, cache.getId(cache.find(state(i), 0)));
+        assertEquals(-1, cache.find(state(16), 0));
+        assertFalse(cache.wasEvicted(state(16), 0));
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void lruEvictsTheLeastRecentlyUsedState() {
+        StateCache cache = fullCache(StateCache.Policy.LRU);
+        cache.find(state(0), 0);
+        cache.addPinned(state(16), 0, 16, 1);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(-1, cache.find(state(1), 0));
+        assertTrue(cache.wasEvicted(state(1), 0));
+        assertTrue(cache.find(state(0), 0) >= 0);
+    }
+
+    @Test
+    public void lowestDepthEvictsTheShallowestState() {
+        StateCache cache = fullCache(StateCache.Policy.LOWEST_DEPTH);
+        cache.find(state(15), 0);
+        cache.addPinned(state(16), 0, 16, 20);
+        assertEquals(-1, cache.find(state(15), 0));
+        assertTrue(cache.wasEvicted(state(15), 0));
+        for (int i = 0; i < 15; ++i) assertTrue(cache.find(state(i), 0) >= 0);
+    }
+
+    @Test
+    public void neverEvictsThePinnedStates() {
+        for (StateCache.Policy policy: StateCache.Policy.values()) {
+            StateCache cache = new StateCache(2, 1, policy);
+            for (int i = 0; i < 8; ++i) cache.addPinned(state(i), 0, i, i);
+            for (int i = 8; i < 16; ++i) cache.unpin(cache.addPinned(state(i), 0, i, i));
+            for (int i = 16; i < 40; ++i) cache.addPinned(state(i), 0, i, i);
+
+            // the unpinned states are evicted first, then the cache grows
+            assertEquals(policy.toString(), 8, cache.getEvictions());
+            assertEquals(policy.toString(), 32, cache.size());
+            for (int i = 0; i < 8; ++i) assertTrue(policy.toString(), cache.find(state(i), 0) >= 0);
+            for (int i = 8; i < 16; ++i) assertEquals(policy.toString(), -1, cache.find(state(i), 0));
+        }
+    }
+
+    @Test
+    public void largeCacheFindsTheSequentialProduct() {
+        for (StateCache.Policy policy: StateCache.Policy.values()) {
+            ProductTesting.assertSameProduct(settings -> {
+                settings.setStateCacheBytes(1 << 20);
+                settings.setCachePolicy(policy);
+            });
+
+            ProductSettings settings = new ProductSettings();
+            settings.setStateCacheBytes(1 << 20);
+            settings.setCachePolicy(policy);
+            ProductStatistics stats = ProductTesting.explore(ProductTesting.NETS[1], settings);
+            assertTrue(stats.getReports().get(0), stats.getReports().get(0).contains(" 0 more explorations"));
+            assertFalse(stats.getReports().get(0), stats.getReports().get(0).contains("; at most "));
+        }
+    }
+
+    @Test
+    public void smallCacheCountsAtLeastTheProduct() {
+        String[] files = ProductTesting.NETS[1];
+        ProductStatistics expected = ProductTesting.explore(files, new ProductSettings());
+        assertTrue(expected.getStateCount() > 16);
+        for (StateCache.Policy policy: StateCache.Policy.values()) {
+            ProductSettings settings = new ProductSettings();
+            settings.setStateCacheBytes(1);
+            settings.setCachePolicy(policy);
+            ProductStatistics actual = new ProductStatistics();
+            GSQProduct.generalSquareProduct(ProductTesting.readNet(files), settings, actual, false);
+
+            assertTrue(policy.toString(), actual.getStateCount() >= expected.getStateCount());
+            assertTrue(policy.toString(), actual.getTransitionCount() >= expected.getTransitionCount());
+            assertEquals(1, actual.getReports().size());
+            assertTrue(actual.getReports().get(0), actual.getReports().get(0).contains("; at most "));
+        }
+    }
+
+}
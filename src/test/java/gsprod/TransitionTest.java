@@ -0,0 +1,49 @@
+package gsprod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class TransitionTest {
+
+    @Test
+    public void equalFieldsMakeEqualTransitions() {
+        Transition trans = new Transition("s0", "a", "s1");
+        Transition copy = new Transition(new String("s0"), new String("a"), new String("s1"));
+        assertEquals(trans, copy);
+        assertEquals(trans.hashCode(), copy.hashCode());
+        assertEquals(0, trans.compareTo(copy));
+        assertEquals(1, new HashSet<>(Arrays.asList(trans, copy)).size());
+    }
+
+    @Test
+    public void everyFieldCounts() {
+        Transition trans = new Transition("s0", "a", "s1");
+        assertNotEquals(trans, new Transition("s1", "a", "s1"));
+        assertNotEquals(trans, new Transition("s0", "b", "s1"));
+        assertNotEquals(trans, new Transition("s0", "a", "s0"));
+        assertNotEquals(trans, null);
+        assertNotEquals(trans, "s0 -(a)-> s1");
+    }
+
+    @Test
+    public void ordersBySourceThenLabelThenTarget() {
+        ArrayList<Transition> sorted = new ArrayList<>(Arrays.asList(new Transition("a", "a", "a"),
+                new Transition("a", "a", "b"), new Transition("a", "b", "a"), new Transition("b", "a", "a")));
+        ArrayList<Transition> shuffled = new ArrayList<>(sorted);
+        Collections.reverse(shuffled);
+        Collections.sort(shuffled);
+        assertEquals(sorted, shuffled);
+
+        for (int i = 0; i < sorted.size(); ++i)
+            for (int j = 0; j < sorted.size(); ++j)
+                assertEquals(Integer.signum(Integer.compare(i, j)), Integer.signum(sorted.get(i).compareTo(sorted.get(j))));
+    }
+
+}
@@ -0,0 +1,59 @@
+package gsprod;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TreeStateStoreTest {
+
+    private static final int STATES = 20000;
+
+    private static void assertStored(StateStore store, long[][] states) {
+        for (int i = 0; i < states.length; ++i) assertEquals(i, store.add(states[i], 0));
+        for (int i = 0; i < states.length; ++i) assertEquals(i, store.add(states[i].clone(), 0));
+        assertEquals(states.length, store.size());
+
+        long[] slots = new long[store.getWidth() + 1];
+        for (int i = 0; i < states.length; ++i) {
+            store.get(i, slots, 1);
+            assertArrayEquals(states[i], Arrays.copyOfRange(slots, 1, slots.length));
+        }
+    }
+
+    @Test
+    public void storesTheHalvesOfTheLongs() {
+        Random random = new Random(1);
+        long[][] states = new long[STATES][];
+        for (int i = 0; i < STATES; ++i) states[i] = new long[] { i, random.nextLong(), i % 7 };
+        assertStored(new TreeStateStore(3), states);
+    }
+
+    @Test
+    public void storesTheFieldsOfTheStates() {
+        // fields of 5, 8, 27 and 24 bits, the first two being the head
+        long[][] states = new long[STATES][];
+        for (int i = 0; i < STATES; ++i) {
+            long state = (i & 31) | (long) (i / 32 & 255) << 5 | (long) (i * 7919 & 0x7ffffff) << 13 | (long) (i % 3) << 40;
+            states[i] = new long[] { state };
+        }
+        assertStored(new TreeStateStore(1, new int[] { 0, 5, 13, 40 }, 2), states);
+    }
+
+    @Test
+    public void sharesTheCommonParts() {
+        TreeStateStore store = new TreeStateStore(2);
+        for (int i = 0; i < STATES; ++i) store.add(new long[] { i, 42 }, 0);
+        // an entry in the root and the left table per state, one entry in the right table
+        assertEquals(2L * STATES + 1, store.getEntryCount());
+    }
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> settings.setTreeCompression(true));
+    }
+
+}
@@ -0,0 +1,23 @@
+package gsprod;
+
+import org.junit.Test;
+
+public class WorkStealingExplorerTest {
+
+    @Test
+    public void findsTheSequentialProduct() {
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setEngine(ProductSettings.Engine.STEALING);
+            settings.setThreads(4);
+        });
+    }
+
+    @Test
+    public void findsTheSequentialProductWithOneThread() {
+        ProductTesting.assertSameProduct(settings -> {
+            settings.setEngine(ProductSettings.Engine.STEALING);
+            settings.setThreads(1);
+        });
+    }
+
+}